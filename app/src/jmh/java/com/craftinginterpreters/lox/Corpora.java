@@ -0,0 +1,148 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Random;
+
+/**
+ * Generates the source code that the benchmarks run on. Generation is seeded so
+ * that every run (and every machine) sees exactly the same input.
+ */
+class Corpora {
+    private static final String[] OPERATORS = { "+", "-", "*", "/" };
+    private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur" };
+
+    /**
+     * @param kind one of "numbers", "strings", "nested", "flat", "branches",
+     *             "random", "commented" or "paragraphs"
+     * @param size number of operands in the generated expression (nodes for
+     *             "random")
+     */
+    static String generate(String kind, int size) {
+        Random random = new Random(42);
+        StringBuilder source = new StringBuilder();
+
+        switch (kind) {
+            // 12.5 * 3 + 7 - 42 / 6 ...
+            case "numbers":
+                source.append(number(random));
+                for (int i = 1; i < size; i++) {
+                    source.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                    source.append(number(random));
+                }
+                break;
+
+            // "lorem" + "ipsum" + ...
+            case "strings":
+                source.append('"').append(WORDS[0]).append('"');
+                for (int i = 1; i < size; i++) {
+                    source.append(" + \"").append(WORDS[random.nextInt(WORDS.length)]).append('"');
+                }
+                break;
+
+            // ((((1 + 2) * 3) - 4) ...)
+            case "nested":
+                for (int i = 1; i < size; i++) {
+                    source.append('(');
+                }
+                source.append(number(random));
+                for (int i = 1; i < size; i++) {
+                    source.append(' ').append(OPERATORS[random.nextInt(3)]).append(' ');
+                    source.append(number(random)).append(')');
+                }
+                break;
+
+            // 1 + 2, 3 < 4, 5 * 6, ... i.e. lots of small expressions
+            case "flat":
+                for (int i = 0; i < size; i++) {
+                    if (i > 0) {
+                        source.append(", ");
+                    }
+                    source.append(number(random)).append(" < ").append(number(random));
+                }
+                break;
+
+            // 1 < 2 == 3 >= 4 ? 5 + 6 : 7 < 8 == ... i.e. branches on booleans
+            case "branches":
+                for (int i = 1; i < size; i++) {
+                    source.append(number(random)).append(" < ").append(number(random)).append(" == ");
+                    source.append(number(random)).append(" >= ").append(number(random)).append(" ? ");
+                    source.append(number(random)).append(" + ").append(number(random)).append(" : ");
+                }
+                source.append(number(random));
+                break;
+
+            // machine generated style: 1 + 2 ... one operand per line, deeply indented
+            // and each with a // comment, every tenth with a nested /* */ block
+            case "commented":
+                for (int i = 0; i < size; i++) {
+                    String indent = " ".repeat(4 * (1 + random.nextInt(8)));
+                    if (i % 10 == 0) {
+                        source.append(indent).append("/* generated block ").append(i).append('\n');
+                        source.append(indent).append(" * /* ").append(sentence(random, 12)).append(" */\n");
+                        source.append(indent).append(" * ").append(sentence(random, 12)).append("\n");
+                        source.append(indent).append(" */\n");
+                    }
+                    source.append(indent).append("// ").append(sentence(random, 10)).append('\n');
+                    source.append(indent).append(i > 0 ? "+ " : "").append(number(random)).append("\r\n");
+                }
+                break;
+
+            // "lorem ipsum ...\n ... " + "..." i.e. long multi-line string literals
+            case "paragraphs":
+                for (int i = 0; i < size; i++) {
+                    source.append(i > 0 ? " + \"" : "\"");
+                    for (int line = 0; line < 4; line++) {
+                        source.append(sentence(random, 15)).append('\n');
+                    }
+                    source.append('"');
+                }
+                break;
+
+            // whatever ExprGenerator comes up with, numbers only so that it evaluates
+            case "random":
+                return random(size);
+
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + kind);
+        }
+
+        return source.toString();
+    }
+
+    /**
+     * @return a positive number, sometimes with a fractional part, so that
+     *         division never fails
+     */
+    private static String number(Random random) {
+        int value = 1 + random.nextInt(1000);
+        return random.nextBoolean() ? Integer.toString(value) : value + "." + random.nextInt(10);
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        for (int i = 1; i < words; i++) {
+            sentence.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sentence.toString();
+    }
+
+    private static String random(int size) {
+        // a divisor can still work out to 0, skip to the next seed if so
+        for (long seed = 42;; seed++) {
+            Expr expression = new ExprGenerator(seed, 64, true).generate(LoxType.NUMBER, size);
+            try {
+                new Interpreter().evaluate(expression);
+                return new SourcePrinter().print(expression);
+            } catch (RuntimeError error) {
+                continue;
+            }
+        }
+    }
+
+    static Expr parse(String source) {
+        Expr expression = new Parser(new Scanner(source).scanTokens()).parse();
+        if (expression == null) {
+            throw new IllegalStateException("Corpus does not parse: " + source);
+        }
+        return expression;
+    }
+}
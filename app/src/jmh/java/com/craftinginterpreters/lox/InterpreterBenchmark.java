@@ -0,0 +1,60 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+    @Param({ "numbers", "strings", "nested", "flat", "branches", "random" })
+    String corpus;
+
+    @Param({ "100", "1000" })
+    int size;
+
+    private Expr expression;
+    private Interpreter interpreter;
+    private Specializer.Node specialized;
+    private StackEvaluator stackEvaluator;
+
+    @Setup
+    public void setup() {
+        expression = Corpora.parse(Corpora.generate(corpus, size));
+        interpreter = new Interpreter();
+        stackEvaluator = new StackEvaluator(interpreter);
+
+        specialized = Specializer.specialize(expression, new TypeChecker(null));
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        return interpreter.evaluate(expression);
+    }
+
+    // same expression without recursion, as with -Djlox.stackSafe=true
+    @Benchmark
+    public Object stackSafe() {
+        return stackEvaluator.evaluate(expression);
+    }
+
+    // same expression with the type checks proven unnecessary removed
+    @Benchmark
+    public Object specialized() {
+        return specialized.evaluate();
+    }
+}
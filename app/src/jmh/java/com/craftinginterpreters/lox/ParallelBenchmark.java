@@ -0,0 +1,60 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParallelEvaluator against the Interpreter on expressions far larger than
+ * the other benchmarks use, since smaller ones are not split at all. The
+ * speedup depends on the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ParallelBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    int size;
+
+    private Expr expression;
+    private Interpreter interpreter;
+    private Map<Expr, Integer> sizes;
+
+    @Setup
+    public void setup() {
+        expression = Corpora.parse(Corpora.generate("random", size));
+        interpreter = new Interpreter();
+        sizes = ParallelEvaluator.shared().measure(expression);
+    }
+
+    @Benchmark
+    public Object sequential() {
+        return interpreter.evaluate(expression);
+    }
+
+    // measured once like CompiledExpr.evaluateInParallel does
+    @Benchmark
+    public Object parallel() {
+        return ParallelEvaluator.shared().evaluate(expression, sizes);
+    }
+
+    // what a single evaluation in the REPL costs
+    @Benchmark
+    public Object measureAndParallel() {
+        return ParallelEvaluator.shared().evaluate(expression);
+    }
+}
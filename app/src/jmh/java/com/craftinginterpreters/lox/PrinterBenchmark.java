@@ -0,0 +1,54 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrinterBenchmark {
+    @Param({ "numbers", "strings", "nested", "flat", "branches", "random" })
+    String corpus;
+
+    @Param({ "100", "1000" })
+    int size;
+
+    private Expr expression;
+
+    @Setup
+    public void setup() {
+        expression = Corpora.parse(Corpora.generate(corpus, size));
+    }
+
+    @Benchmark
+    public String astPrinter() {
+        return new AstPrinter().print(expression);
+    }
+
+    @Benchmark
+    public String reversePolishNotationPrinter() {
+        return new ReversePolishNotationPrinter().print(expression);
+    }
+
+    // streaming only, without building the string
+    @Benchmark
+    public void astPrinterToWriter() throws IOException {
+        new AstPrinter().print(expression, Writer.nullWriter());
+    }
+}
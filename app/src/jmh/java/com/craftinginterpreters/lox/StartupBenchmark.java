@@ -0,0 +1,64 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time from launching 'jlox script.lox' in a fresh JVM until its first line of
+ * output arrives, with and without the AppCDS archive. The class path, archive
+ * and script are passed in by the jmh task (see app/build.gradle), which also
+ * builds the archive first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+    @Param({ "off", "on" })
+    String cds;
+
+    private List<String> command;
+
+    @Setup
+    public void setup() {
+        command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (cds.equals("on")) {
+            command.add("-XX:SharedArchiveFile=" + System.getProperty("jlox.startup.archive"));
+            command.add("-Xshare:auto");
+        }
+        command.add("-cp");
+        command.add(System.getProperty("jlox.startup.classpath"));
+        command.add(Lox.class.getName());
+        command.add(System.getProperty("jlox.startup.script"));
+    }
+
+    @Benchmark
+    public String timeToFirstResult() throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String firstLine = output.readLine();
+            process.waitFor();
+            return firstLine;
+        }
+    }
+}
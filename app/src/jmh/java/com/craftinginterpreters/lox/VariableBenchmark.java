@@ -0,0 +1,67 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A rule script style program: a chain of named intermediates, each computed
+ * from the previous ones, declared either as globals or as locals of nested
+ * blocks (so that reads have to walk out a few environments).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariableBenchmark {
+    @Param({ "globals", "locals" })
+    String scope;
+
+    @Param({ "100", "1000" })
+    int variables;
+
+    private List<Stmt> statements;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setup() {
+        StringBuilder source = new StringBuilder();
+        boolean locals = scope.equals("locals");
+        for (int i = 0; i < variables; i++) {
+            // a new block every 10 variables
+            if (locals && i % 10 == 0) {
+                source.append("{\n");
+            }
+            source.append("var v").append(i).append(" = ");
+            source.append(i == 0 ? "1" : "v" + (i - 1) + " * 2 - v" + (i / 2) + " / 3 + 1").append(";\n");
+        }
+        if (locals) {
+            source.append("}\n".repeat((variables + 9) / 10));
+        }
+
+        statements = new Parser(new Scanner(source.toString()).scanTokens()).parseProgram();
+        interpreter = new Interpreter();
+        new Resolver(interpreter.globals).resolve(statements);
+        if (Lox.hadError) {
+            throw new IllegalStateException("Program does not resolve: " + source);
+        }
+    }
+
+    @Benchmark
+    public boolean interpret() {
+        return interpreter.interpret(statements);
+    }
+}
@@ -1,74 +1,148 @@
 package com.craftinginterpreters.lox;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 /**
  * Prints a tree representation of an Expression as a string.
- * 
+ *
+ * The output is streamed into an Appendable (e.g. a Writer) and the tree is
+ * walked with an explicit stack, so printing takes time linear in the size of
+ * the output and no more thread stack for a tree that is a million levels deep
+ * than for 1 + 2.
+ *
  * Example Usage:
- * 
+ *
  * <pre>
  * {@code
- *      Expr some_expresion = new BinaryExpr(...);
- *      System.out.println(new AstPrinter.print(some_expression));
+ *      Expr some_expression = new Expr.Binary(...);
+ *      System.out.println(new AstPrinter().print(some_expression));
+ *
+ *      // or, for a huge tree
+ *      try (Writer out = Files.newBufferedWriter(path)) {
+ *          new AstPrinter().print(some_expression, out);
+ *      }
  * }
  * </pre>
  */
-public class AstPrinter implements Expr.Visitor<String> {
+public class AstPrinter implements Expr.Visitor<Void> {
+    // what is left to print, either an Expr or a String to print as is
+    private final Deque<Object> pending = new ArrayDeque<>();
+    private Appendable out;
+
     /**
      * Public entry method for the visitor. Clients of this class should just call
      * this with an expression.
-     * 
+     *
      * @param expr expression to print
      * @return a tree (string) representation of the expr
      */
     String print(Expr expr) {
-        return expr.accept(this);
+        StringBuilder builder = new StringBuilder();
+        try {
+            print(expr, builder);
+        } catch (IOException e) {
+            throw new AssertionError(e); // StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Same as print(Expr) but appends the representation to out.
+     *
+     * @throws IOException if out does
+     */
+    void print(Expr expr, Appendable out) throws IOException {
+        this.out = out;
+        pending.push(expr);
+        try {
+            while (!pending.isEmpty()) {
+                Object next = pending.pop();
+                if (next instanceof Expr) {
+                    ((Expr) next).accept(this); // prints the head and pushes the rest
+                } else {
+                    append((String) next);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pending.clear();
+            this.out = null;
+        }
     }
 
     @Override
-    public String visitTernaryExpr(Expr.Ternary expr) {
+    public Void visitTernaryExpr(Expr.Ternary expr) {
         return parenthesize("?", expr.cond, expr.ifTrue, expr.orElse);
     }
 
     @Override
-    public String visitBinaryExpr(Expr.Binary expr) {
+    public Void visitBinaryExpr(Expr.Binary expr) {
         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
     }
 
     @Override
-    public String visitGroupingExpr(Expr.Grouping expr) {
+    public Void visitGroupingExpr(Expr.Grouping expr) {
         return parenthesize("group", expr.expression);
     }
 
     @Override
-    public String visitLiteralExpr(Expr.Literal expr) {
+    public Void visitLiteralExpr(Expr.Literal expr) {
         if (expr.value == null) {
-            return "nil";
+            append("nil");
+        } else {
+            append(expr.value.toString());
         }
-        return expr.value.toString();
+        return null;
     }
 
     @Override
-    public String visitUnaryExpr(Expr.Unary expr) {
+    public Void visitUnaryExpr(Expr.Unary expr) {
         return parenthesize(expr.operator.lexeme, expr.right);
     }
 
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        append(expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        return parenthesize("= " + expr.name.lexeme, expr.value);
+    }
+
     /**
-     * returns a string representation of name (usually an operators) applied to
-     * sub-expressions exprs wrapped in paratheses e.g. (+ 2 3)
-     * 
+     * prints name (usually an operators) applied to sub-expressions exprs wrapped
+     * in paratheses e.g. (+ 2 3). Only "(+" is printed right away, the
+     * subexpressions and the ")" are pushed to be printed next.
+     *
      * @param name  of a lexeme e.g. +, -
      * @param exprs 0 or more expressions
      */
-    private String parenthesize(String name, Expr... exprs) {
-        StringBuilder builder = new StringBuilder();
-        builder.append("(").append(name);
+    private Void parenthesize(String name, Expr... exprs) {
+        append("(");
+        append(name);
 
-        for (Expr expr : exprs) {
-            builder.append(" ");
-            builder.append(expr.accept(this)); // visit the subexpressions
+        // pushed in reverse so that they are popped in order
+        pending.push(")");
+        for (int i = exprs.length - 1; i >= 0; i--) {
+            pending.push(exprs[i]);
+            pending.push(" ");
         }
-        builder.append(")");
+        return null;
+    }
 
-        return builder.toString();
+    // the visitor methods can't throw IOException, print(Expr, Appendable) unwraps
+    // it again
+    private void append(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
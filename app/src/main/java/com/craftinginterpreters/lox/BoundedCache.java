@@ -0,0 +1,71 @@
+package com.craftinginterpreters.lox;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded cache that evicts the least recently used entry, for
+ * ExprCache and ExprMemo. A LinkedHashMap in access order behind one lock: the
+ * caches are small and an entry is looked up once per evaluation at most, so
+ * there is little to contend on.
+ *
+ * Keys are compared with equals, i.e. by identity for keys like Expr that
+ * don't override it.
+ */
+class BoundedCache<K, V> {
+    private final long maximumSize;
+    private final Map<K, V> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    BoundedCache(long maximumSize) {
+        this.maximumSize = maximumSize;
+        // accessOrder: get moves an entry to the end, so the eldest is the least
+        // recently used one
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > maximumSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached value, null if there is none
+     */
+    synchronized V getIfPresent(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    long maximumSize() {
+        return maximumSize;
+    }
+
+    synchronized long size() {
+        return entries.size();
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions);
+    }
+}
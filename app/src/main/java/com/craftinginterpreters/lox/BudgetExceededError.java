@@ -0,0 +1,12 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Raised when an evaluation runs out of its EvaluationBudget or is cancelled.
+ * The token is the operator or variable that was being evaluated at the time,
+ * null if none had been yet.
+ */
+class BudgetExceededError extends RuntimeError {
+    BudgetExceededError(Token token, String message) {
+        super(token, message);
+    }
+}
@@ -0,0 +1,55 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * A snapshot of the statistics of a cache, e.g. CompiledExpr.cacheStats.
+ */
+public final class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+
+    CacheStats(long hitCount, long missCount, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * @return the number of lookups that found a value
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that found nothing
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return the share of lookups that found a value, 1.0 if there were none
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return the number of entries dropped to make room for new ones
+     */
+    public long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount + ", evictionCount="
+                + evictionCount + "}";
+    }
+}
@@ -0,0 +1,46 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by {@link Lox#compile(String)} when the source has syntax errors. The
+ * errors are collected instead of being printed so that embedders can decide
+ * what to do with them.
+ */
+public class CompileError extends RuntimeException {
+    private final List<Diagnostic> diagnostics;
+
+    CompileError(List<Diagnostic> diagnostics) {
+        super(join(diagnostics));
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    /**
+     * @return the error messages in the order they were reported, formatted the
+     *         same way as on the command line e.g. "[line 1] Error at ')': ..."
+     */
+    public List<String> errors() {
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic diagnostic : diagnostics) {
+            errors.add(diagnostic.toString());
+        }
+        return errors;
+    }
+
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    private static String join(List<Diagnostic> diagnostics) {
+        StringBuilder message = new StringBuilder();
+        for (Diagnostic diagnostic : diagnostics) {
+            if (message.length() > 0) {
+                message.append('\n');
+            }
+            message.append(diagnostic);
+        }
+        return message.toString();
+    }
+}
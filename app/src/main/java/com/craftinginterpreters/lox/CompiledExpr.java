@@ -0,0 +1,225 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An expression that has already been scanned and parsed and can be evaluated
+ * any number of times. Instances are safe to share between threads, and get
+ * faster the more they are evaluated (see TierManager). There are no
+ * declarations in an expression, so using or assigning a variable is an
+ * "Undefined variable" runtime error.
+ * 
+ * Example Usage:
+ * 
+ * <pre>
+ * {@code
+ *      CompiledExpr expr = Lox.compile("(1 + 2) * 3");
+ *      Object value = expr.evaluate(); // 9.0
+ * }
+ * </pre>
+ */
+public final class CompiledExpr {
+    // evaluates the expressions that are still INTERPRETED, it only reads its
+    // fields (budget stays null) so it can be shared by all threads
+    private static final Interpreter INTERPRETER = new Interpreter();
+
+    private final String source;
+    final Expr expression;
+    private final TierManager tiers;
+    private volatile Code code = Code.INTERPRETED;
+    // only an estimate of how hot the expression is, racing evaluations may
+    // lose increments
+    private int evaluations = 0;
+    // set while a promotion is queued or running so that only one is
+    private final AtomicBoolean promoting = new AtomicBoolean();
+    private volatile List<Diagnostic> typeErrors;
+    // see lineMap, made the first time it is needed
+    private volatile LineMap lineMap;
+    // see evaluateInParallel, only measured if that is used
+    private volatile Map<Expr, Integer> parallelSizes;
+
+    // how the expression is evaluated in its current tier, swapped as a whole
+    private static final class Code {
+        static final Code INTERPRETED = new Code(TierManager.Tier.INTERPRETED, null, false);
+
+        final TierManager.Tier tier;
+        final Specializer.Node node; // null while INTERPRETED
+        // true if this is the last tier, i.e. FOLDED or the one promoting gave up in
+        final boolean last;
+
+        Code(TierManager.Tier tier, Specializer.Node node, boolean last) {
+            this.tier = tier;
+            this.node = node;
+            this.last = last;
+        }
+    }
+
+    CompiledExpr(String source, Expr expression) {
+        this(source, expression, TierManager.shared());
+    }
+
+    CompiledExpr(String source, Expr expression, TierManager tiers) {
+        this.source = source;
+        this.expression = expression;
+        this.tiers = tiers;
+    }
+
+    /**
+     * @return the value of the expression i.e. a Double, String, Boolean or null
+     *         for nil.
+     * @throws RuntimeException (a RuntimeError) if evaluation fails e.g. on
+     *                          division by zero.
+     */
+    public Object evaluate() {
+        // walks the tree until the expression is hot enough to be worth
+        // promoting, see TierManager
+        Code code = this.code;
+        long started = System.nanoTime();
+        try {
+            return code.node == null ? INTERPRETER.evaluate(expression) : code.node.evaluate();
+        } catch (RuntimeError error) {
+            LoxMetrics.recordRuntimeError(error.getMessage());
+            throw error;
+        } finally {
+            LoxMetrics.recordEvaluation(System.nanoTime() - started);
+            count(code);
+        }
+    }
+
+    private void count(Code code) {
+        tiers.recordEvaluation(code.tier);
+        if (code.last) {
+            return;
+        }
+
+        int evaluations = ++this.evaluations;
+        TierManager.Tier next = tiers.promotion(code.tier, evaluations);
+        if (next != null && promoting.compareAndSet(false, true)) {
+            tiers.promote(() -> promote(next, evaluations), () -> promoting.set(false));
+        }
+    }
+
+    // runs on the tiering thread
+    private void promote(TierManager.Tier tier, int evaluations) {
+        try {
+            LoxEvents.Promotion event = LoxEvents.beginPromotion();
+            Code current = code;
+            Specializer.Node node;
+            try {
+                node = current.node;
+                if (node == null) {
+                    TypeChecker checker = new TypeChecker(lineMap());
+                    node = Specializer.specialize(expression, checker);
+                    typeErrors = Collections.unmodifiableList(checker.errors());
+                }
+                if (tier == TierManager.Tier.FOLDED) {
+                    node = Specializer.fold(node);
+                }
+            } catch (StackOverflowError error) {
+                // too deep for the tiering thread, stay in this tier for good
+                code = new Code(current.tier, current.node, true);
+                return;
+            }
+
+            code = new Code(tier, node, tier == TierManager.Tier.FOLDED);
+            tiers.recordPromotion(tier);
+            LoxEvents.endPromotion(event, source, tier, evaluations);
+        } finally {
+            // also if something else went wrong, a later evaluation tries again
+            promoting.set(false);
+        }
+    }
+
+    /**
+     * @return INTERPRETED, SPECIALIZED or FOLDED, see TierManager
+     */
+    public String tier() {
+        return code.tier.name();
+    }
+
+    /**
+     * Same as {@link #evaluate()} but stops with an error once the budget is used
+     * up or cancelled.
+     */
+    public Object evaluate(EvaluationBudget budget) {
+        if (budget == null) {
+            return evaluate();
+        }
+        // the budget is charged per node, which only the Interpreter does
+        return new Interpreter().evaluate(expression, budget);
+    }
+
+    /**
+     * Same as {@link #evaluate()} but evaluates independent parts of a large
+     * expression (e.g. the elements of a long comma list) on the common
+     * ForkJoinPool. Errors are the same as with evaluate(). Only worth it for
+     * expressions with thousands of nodes, smaller ones are evaluated on the
+     * calling thread.
+     */
+    public Object evaluateInParallel() {
+        Map<Expr, Integer> sizes = parallelSizes;
+        if (sizes == null) {
+            // racing threads measure the same, any of the results will do
+            sizes = ParallelEvaluator.shared().measure(expression);
+            parallelSizes = sizes;
+        }
+        return ParallelEvaluator.shared().evaluate(expression, sizes);
+    }
+
+    /**
+     * @return the operators that are certain to fail when the expression is
+     *         evaluated, found without evaluating it e.g. the '-' in
+     *         {@code 1 + -"one"}. Empty if there are none.
+     */
+    public List<Diagnostic> typeErrors() {
+        List<Diagnostic> errors = typeErrors;
+        if (errors == null) {
+            // not promoted yet, racing threads find the same errors
+            TypeChecker types = new TypeChecker(lineMap());
+            types.check(expression);
+            errors = Collections.unmodifiableList(types.errors());
+            typeErrors = errors;
+        }
+        return errors;
+    }
+
+    /**
+     * Same as {@link #evaluate()} but formats the value the way the REPL prints
+     * it.
+     */
+    public String evaluateToString() {
+        return Interpreter.stringify(evaluate());
+    }
+
+    /**
+     * @return hit/miss/eviction statistics of the cache behind Lox.compile
+     */
+    public static CacheStats cacheStats() {
+        // lives here rather than on Lox since the launcher loads every type in the
+        // signatures of Lox's public methods, which script runs don't need
+        return ExprCache.shared().stats();
+    }
+
+    LineMap lineMap() {
+        LineMap map = lineMap;
+        if (map == null) {
+            // racing threads make equal maps, either will do. The line table is
+            // only built when an error is rendered
+            map = new LineMap(source, 1);
+            lineMap = map;
+        }
+        return map;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
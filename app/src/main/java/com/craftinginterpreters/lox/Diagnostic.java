@@ -0,0 +1,109 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * A syntax, type or runtime error, as a value. toString formats it the same way the
+ * command line prints it.
+ */
+public final class Diagnostic {
+    public enum Kind {
+        SYNTAX, TYPE, RUNTIME
+    }
+
+    private final Kind kind;
+    private final int line;
+    private final String where; // e.g. " at ')'", only for syntax and type errors
+    private final String message;
+    private final LineMap source; // null if unknown
+    private final int offset;
+    private final int length;
+
+    private Diagnostic(Kind kind, int line, String where, String message, LineMap source, int offset, int length) {
+        this.kind = kind;
+        this.line = line;
+        this.where = where;
+        this.message = message;
+        this.source = offset < 0 ? null : source;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @param source the source offset is in, may be null
+     * @param offset where the error is, -1 if unknown
+     * @param length length of the offending lexeme
+     */
+    static Diagnostic syntax(int line, String where, String message, LineMap source, int offset, int length) {
+        return new Diagnostic(Kind.SYNTAX, line, where, message, source, offset, length);
+    }
+
+    /**
+     * @param source the source error.token comes from, may be null
+     */
+    static Diagnostic runtime(RuntimeError error, LineMap source) {
+        Token token = error.token;
+        if (token == null) {
+            return new Diagnostic(Kind.RUNTIME, 0, "", error.getMessage(), null, -1, 0);
+        }
+        return new Diagnostic(Kind.RUNTIME, token.line, "", error.getMessage(), source, token.offset,
+                token.lexeme.length());
+    }
+
+    /**
+     * An operator that TypeChecker found will certainly fail when evaluated.
+     * 
+     * @param source the source operator comes from, may be null
+     */
+    /**
+     * @return true for a syntax error at the end of the source, i.e. more of the
+     *         source might have fixed it
+     */
+    boolean isAtEnd() {
+        return kind == Kind.SYNTAX && where.equals(" at end");
+    }
+
+    static Diagnostic type(Token operator, String message, LineMap source) {
+        return new Diagnostic(Kind.TYPE, operator.line, " at '" + operator.lexeme + "'", message, source,
+                operator.offset, operator.lexeme.length());
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /**
+     * @return the line of the error, 0 if unknown
+     */
+    public int line() {
+        return line;
+    }
+
+    /**
+     * @return the 1-based column of the error, 0 if unknown
+     */
+    public int column() {
+        return source == null ? 0 : source.column(offset);
+    }
+
+    /**
+     * @return the offending line with a caret under the error, or null if the
+     *         location is unknown. See LineMap.snippet.
+     */
+    public String snippet() {
+        return source == null ? null : source.snippet(offset, length);
+    }
+
+    /**
+     * @return the message without location e.g. "Expected expression."
+     */
+    public String message() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        if (kind != Kind.RUNTIME) {
+            return "[line " + line + "] Error" + where + ": " + message;
+        }
+        return line == 0 ? message : message + "\n[line " + line + "]";
+    }
+}
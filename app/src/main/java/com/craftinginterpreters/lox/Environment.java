@@ -0,0 +1,28 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The local variables of one execution of a block. The Resolver gives every
+ * variable declared in the block a slot, so a variable is read with an array
+ * index instead of a lookup by name, and a variable from an enclosing block by
+ * following depth enclosing links first.
+ *
+ * Blocks that declare no variables get no Environment, see
+ * Interpreter.visitBlockStmt.
+ */
+class Environment {
+    final Environment enclosing; // null for the outermost block
+    final Object[] slots;
+
+    Environment(Environment enclosing, int size) {
+        this.enclosing = enclosing;
+        this.slots = new Object[size];
+    }
+
+    Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
+        }
+        return environment;
+    }
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Counts how often each type of Expr node is evaluated. Counting is off unless
+ * the JVM is started with -Djlox.countNodes=true. Since ENABLED is a static
+ * final, the JIT removes the counting code entirely when it is off.
+ * 
+ * The counts are emitted as the periodic jlox.NodeCounts flight recorder event.
+ */
+class EvalCounters {
+    static final boolean ENABLED = Boolean.getBoolean("jlox.countNodes");
+
+    static final LongAdder TERNARY = new LongAdder();
+    static final LongAdder BINARY = new LongAdder();
+    static final LongAdder GROUPING = new LongAdder();
+    static final LongAdder LITERAL = new LongAdder();
+    static final LongAdder UNARY = new LongAdder();
+    static final LongAdder VARIABLE = new LongAdder();
+    static final LongAdder ASSIGN = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(LoxEvents.NodeCounts.class, () -> {
+                LoxEvents.NodeCounts event = new LoxEvents.NodeCounts();
+                event.ternary = TERNARY.sum();
+                event.binary = BINARY.sum();
+                event.grouping = GROUPING.sum();
+                event.literal = LITERAL.sum();
+                event.unary = UNARY.sum();
+                event.variable = VARIABLE.sum();
+                event.assign = ASSIGN.sum();
+                event.commit();
+            });
+        }
+    }
+
+    private EvalCounters() {
+    }
+}
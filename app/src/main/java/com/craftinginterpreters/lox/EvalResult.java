@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of Lox.evaluate: either a value or the diagnostics explaining why
+ * there is none. Nothing is printed and no exception is thrown on the way, which
+ * keeps bulk evaluation of mostly broken inputs cheap.
+ */
+public final class EvalResult {
+    private final Object value;
+    private final List<Diagnostic> diagnostics;
+
+    private EvalResult(Object value, List<Diagnostic> diagnostics) {
+        this.value = value;
+        this.diagnostics = diagnostics;
+    }
+
+    static EvalResult success(Object value) {
+        return new EvalResult(value, Collections.emptyList());
+    }
+
+    static EvalResult failure(List<Diagnostic> diagnostics) {
+        return new EvalResult(null, Collections.unmodifiableList(diagnostics));
+    }
+
+    public boolean isSuccess() {
+        return diagnostics.isEmpty();
+    }
+
+    /**
+     * @return the value (a Double, String, Boolean or null for nil), null if
+     *         evaluation failed
+     */
+    public Object value() {
+        return value;
+    }
+
+    /**
+     * @return the value formatted the way the REPL prints it
+     */
+    public String valueAsString() {
+        return Interpreter.stringify(value);
+    }
+
+    /**
+     * @return the syntax errors, or the runtime error, in the order they were
+     *         reported. Empty on success.
+     */
+    public List<Diagnostic> diagnostics() {
+        return diagnostics;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? valueAsString() : diagnostics.toString();
+    }
+}
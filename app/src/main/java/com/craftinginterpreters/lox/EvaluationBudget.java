@@ -0,0 +1,146 @@
+package com.craftinginterpreters.lox;
+
+import java.time.Duration;
+
+/**
+ * Limits on a single evaluation so that a huge or pathological expression
+ * cannot hog the interpreter: a maximum number of evaluated nodes, a wall clock
+ * deadline and a maximum length for strings built by concatenation. An
+ * evaluation can also be cancelled from another thread.
+ * 
+ * A budget keeps track of how much of it has been used, so create a new one for
+ * every evaluation. The deadline starts counting when the budget is created.
+ * 
+ * Example Usage:
+ * 
+ * <pre>
+ * {@code
+ *      EvaluationBudget budget = new EvaluationBudget(100_000, Duration.ofMillis(50), 1 << 20);
+ *      Object value = Lox.compile(source).evaluate(budget);
+ * }
+ * </pre>
+ */
+public final class EvaluationBudget {
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    // the clock and the cancellation flag are only looked at every this many
+    // steps (must be a power of two)
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final long maxSteps;
+    private final long deadline; // in System.nanoTime() terms
+    private final long maxStringLength;
+    private volatile boolean cancelled = false;
+
+    private long steps = 0;
+    // the token of the innermost node with one, so that an error points at
+    // where the evaluation got to. null until then, e.g. in an expression of
+    // nothing but a literal, and the error then has no location
+    private Token current = null;
+
+    /**
+     * @param maxSteps        maximum number of expression nodes to evaluate, or
+     *                        Long.MAX_VALUE for no limit
+     * @param timeout         wall clock limit, or null for no limit
+     * @param maxStringLength maximum length of a string produced by '+', or
+     *                        Long.MAX_VALUE for no limit
+     */
+    public EvaluationBudget(long maxSteps, Duration timeout, long maxStringLength) {
+        this.maxSteps = maxSteps;
+        this.deadline = timeout == null ? UNLIMITED : System.nanoTime() + timeout.toNanos();
+        this.maxStringLength = maxStringLength;
+    }
+
+    /**
+     * Builds a budget from the 'jlox.maxSteps', 'jlox.timeoutMillis' and
+     * 'jlox.maxStringLength' system properties.
+     * 
+     * @return null if none of them are set
+     */
+    static EvaluationBudget fromSystemProperties() {
+        Long maxSteps = Long.getLong("jlox.maxSteps");
+        Long timeoutMillis = Long.getLong("jlox.timeoutMillis");
+        Long maxStringLength = Long.getLong("jlox.maxStringLength");
+        if (maxSteps == null && timeoutMillis == null && maxStringLength == null) {
+            return null;
+        }
+
+        return new EvaluationBudget(
+                maxSteps == null ? UNLIMITED : maxSteps,
+                timeoutMillis == null ? null : Duration.ofMillis(timeoutMillis),
+                maxStringLength == null ? UNLIMITED : maxStringLength);
+    }
+
+    /**
+     * Asks the evaluation using this budget to stop. It will fail with a
+     * BudgetExceededError shortly after. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Called by the interpreter once per evaluated node.
+     */
+    void step(Expr expr) {
+        Token token = LoxProfiler.token(expr);
+        if (token != null) {
+            current = token;
+        }
+
+        if (++steps > maxSteps) {
+            throw new BudgetExceededError(current, "Evaluation exceeded the limit of " + maxSteps + " steps.");
+        }
+
+        if ((steps & (CHECK_INTERVAL - 1)) == 0) {
+            checkCancelledOrTimedOut();
+        }
+    }
+
+    /**
+     * Called by the MemoizingInterpreter for a subexpression of the given number
+     * of nodes that it did not have to evaluate, as if it had evaluated every one
+     * of them, so that a memo hit is limited like an evaluation.
+     */
+    void step(Expr expr, int nodes) {
+        Token token = LoxProfiler.token(expr);
+        if (token != null) {
+            current = token;
+        }
+
+        long before = steps;
+        steps += nodes;
+        if (steps > maxSteps) {
+            throw new BudgetExceededError(current, "Evaluation exceeded the limit of " + maxSteps + " steps.");
+        }
+
+        // at least one of the steps would have checked
+        if (((before ^ steps) & -CHECK_INTERVAL) != 0) {
+            checkCancelledOrTimedOut();
+        }
+    }
+
+    private void checkCancelledOrTimedOut() {
+        if (cancelled) {
+            throw new BudgetExceededError(current, "Evaluation cancelled.");
+        }
+        if (deadline != UNLIMITED && System.nanoTime() - deadline > 0) {
+            throw new BudgetExceededError(current, "Evaluation timed out.");
+        }
+    }
+
+    boolean allowsStringLength(long length) {
+        return length <= maxStringLength;
+    }
+
+    /**
+     * Called by the interpreter before it concatenates a string of the given
+     * length.
+     */
+    void checkStringLength(Token operator, long length) {
+        if (!allowsStringLength(length)) {
+            throw new BudgetExceededError(operator,
+                    "String of length " + length + " exceeds the limit of " + maxStringLength + ".");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+abstract class Expr {
+  interface Visitor<R> {
+    R visitTernaryExpr(Ternary expr);
+    R visitBinaryExpr(Binary expr);
+    R visitGroupingExpr(Grouping expr);
+    R visitLiteralExpr(Literal expr);
+    R visitUnaryExpr(Unary expr);
+    R visitVariableExpr(Variable expr);
+    R visitAssignExpr(Assign expr);
+  }
+  static class Ternary extends Expr {
+    Ternary(Expr cond, Expr ifTrue, Expr orElse) {
+    this.cond = cond;
+    this.ifTrue = ifTrue;
+    this.orElse = orElse;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitTernaryExpr(this);
+    }
+
+    final Expr cond;
+    final Expr ifTrue;
+    final Expr orElse;
+
+  }
+  static class Binary extends Expr {
+    Binary(Expr left, Token operator, Expr right) {
+    this.left = left;
+    this.operator = operator;
+    this.right = right;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitBinaryExpr(this);
+    }
+
+    final Expr left;
+    final Token operator;
+    final Expr right;
+
+  }
+  static class Grouping extends Expr {
+    Grouping(Expr expression) {
+    this.expression = expression;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitGroupingExpr(this);
+    }
+
+    final Expr expression;
+
+  }
+  static class Literal extends Expr {
+    Literal(Object value) {
+    this.value = value;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLiteralExpr(this);
+    }
+
+    final Object value;
+
+  }
+  static class Unary extends Expr {
+    Unary(Token operator, Expr right) {
+    this.operator = operator;
+    this.right = right;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitUnaryExpr(this);
+    }
+
+    final Token operator;
+    final Expr right;
+
+  }
+  static class Variable extends Expr {
+    Variable(Token name) {
+    this.name = name;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitVariableExpr(this);
+    }
+
+    final Token name;
+    int depth = -1;
+    int slot = -1;
+
+  }
+  static class Assign extends Expr {
+    Assign(Token name, Expr value) {
+    this.name = name;
+    this.value = value;
+  }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitAssignExpr(this);
+    }
+
+    final Token name;
+    final Expr value;
+    int depth = -1;
+    int slot = -1;
+
+  }
+
+  abstract <R> R accept(Visitor<R> visitor);
+}
@@ -0,0 +1,110 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A size bounded (LRU, see BoundedCache) cache of compiled
+ * expressions keyed by their source text. A hit skips both the scanner and the
+ * parser.
+ */
+class ExprCache {
+    static final int DEFAULT_MAXIMUM_SIZE = 1024;
+
+    private final BoundedCache<String, CompiledExpr> cache;
+
+    // holder class so that the cache is only created once Lox.compile is used,
+    // plain script runs never need it
+    private static class Shared {
+        static final ExprCache INSTANCE = fromSystemProperties();
+    }
+
+    /**
+     * @return the cache behind Lox.compile
+     */
+    static ExprCache shared() {
+        return Shared.INSTANCE;
+    }
+
+    ExprCache(long maximumSize) {
+        this.cache = new BoundedCache<>(maximumSize);
+    }
+
+    /**
+     * @return a cache of -Djlox.cacheSize=N expressions, DEFAULT_MAXIMUM_SIZE if
+     *         it is not set
+     */
+    static ExprCache fromSystemProperties() {
+        return new ExprCache(Long.getLong("jlox.cacheSize", DEFAULT_MAXIMUM_SIZE));
+    }
+
+    /**
+     * Returns the cached expression for source, compiling (and caching) it on a
+     * miss. Sources with syntax errors are not cached.
+     * 
+     * @throws CompileError if source does not parse
+     */
+    CompiledExpr get(String source) {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        CompiledExpr compiled = get(source, diagnostics);
+        if (compiled == null) {
+            throw new CompileError(diagnostics);
+        }
+        return compiled;
+    }
+
+    /**
+     * Same as get(String) but adds syntax errors to diagnostics (and returns
+     * null) instead of throwing.
+     */
+    CompiledExpr get(String source, List<Diagnostic> diagnostics) {
+        CompiledExpr compiled = cache.getIfPresent(source);
+        if (compiled == null) {
+            // two threads may both miss on the same source and compile it twice, that
+            // is fine since the results are equivalent
+            compiled = compile(source, diagnostics);
+            if (compiled != null) {
+                cache.put(source, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    long maximumSize() {
+        return cache.maximumSize();
+    }
+
+    void clear() {
+        cache.invalidateAll();
+    }
+
+    private static CompiledExpr compile(String source, List<Diagnostic> diagnostics) {
+        long started = System.nanoTime();
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        Expr expression;
+        try {
+            Scanner scanner = new Scanner(source);
+            Lox.setSource(scanner.lineMap());
+            Parser parser = new Parser(scanner.scanTokens());
+            expression = parser.parse();
+        } finally {
+            Lox.setSource(null);
+            Lox.endCollectingErrors();
+            LoxMetrics.recordParse(System.nanoTime() - started);
+        }
+
+        if (!errors.isEmpty()) {
+            diagnostics.addAll(errors);
+            return null;
+        }
+        return new CompiledExpr(source, expression);
+    }
+}
@@ -0,0 +1,284 @@
+package com.craftinginterpreters.lox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A size bounded table of the values of subexpressions, keyed by their
+ * structure rather than their identity, so that 2 * (1 + 2 + 3 + ...) typed in
+ * one line and (1 + 2 + 3 + ...) - 1 typed in the next only evaluate the sum
+ * once. Runtime errors are kept too and re-raised on the operator at the same
+ * place in the new expression. Used by MemoizingInterpreter.
+ *
+ * Expressions without variables have no side effects, so such a subexpression
+ * always has the same value wherever it appears. Subexpressions that read or
+ * assign a variable are never memoized.
+ */
+class ExprMemo {
+    // nodes, smaller subexpressions are faster to evaluate than to look up
+    static final int MIN_SIZE = 16;
+
+    private final BoundedCache<Key, Result> results;
+    // the keys of the subexpressions of recently evaluated expressions, by
+    // identity, so that evaluating the same tree again skips hashing
+    private final BoundedCache<Expr, Map<Expr, Key>> keysByRoot;
+
+    // holder class so that the memo is only created if memoizing is turned on
+    private static class Shared {
+        static final ExprMemo INSTANCE = create(Long.getLong("jlox.memoSize", 0));
+
+        private static ExprMemo create(long maximumSize) {
+            return maximumSize > 0 ? new ExprMemo(maximumSize) : null;
+        }
+    }
+
+    /**
+     * @return the memo shared by the REPL and all server connections, null unless
+     *         -Djlox.memoSize=N (the number of values to keep) is set
+     */
+    static ExprMemo shared() {
+        return Shared.INSTANCE;
+    }
+
+    ExprMemo(long maximumSize) {
+        this.results = new BoundedCache<>(maximumSize);
+        this.keysByRoot = new BoundedCache<>(64);
+    }
+
+    /**
+     * @return the keys of every subexpression of root with at least MIN_SIZE
+     *         nodes and no variables
+     */
+    Map<Expr, Key> keys(Expr root) {
+        Map<Expr, Key> keys = keysByRoot.getIfPresent(root);
+        if (keys == null) {
+            Hasher hasher = new Hasher();
+            hasher.hash(root);
+            keys = hasher.keys;
+            keysByRoot.put(root, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the memoized value or error, null if there is none
+     */
+    Result get(Key key) {
+        return results.getIfPresent(key);
+    }
+
+    void putValue(Key key, Object value) {
+        results.put(key, new Result(value, null, null));
+    }
+
+    /**
+     * @param expr the subexpression key is for, error has to come from one of its
+     *             operators
+     */
+    void putError(Key key, Expr expr, RuntimeError error) {
+        int[] path = pathTo(expr, error.token);
+        if (path != null) {
+            results.put(key, new Result(null, error.getMessage(), path));
+        }
+    }
+
+    CacheStats stats() {
+        return results.stats();
+    }
+
+    /**
+     * A subexpression compared by structure. The hash is computed once, equals
+     * only walks the trees when the hashes match.
+     */
+    static final class Key {
+        private final Expr expr;
+        private final long hash;
+        private final int size;
+
+        private Key(Expr expr, long hash, int size) {
+            this.expr = expr;
+            this.hash = hash;
+            this.size = size;
+        }
+
+        /**
+         * @return the number of nodes of the subexpression
+         */
+        int size() {
+            return size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && sameStructure(expr, key.expr);
+        }
+    }
+
+    /**
+     * A memoized value or runtime error. The error's operator is kept as a path
+     * from the subexpression (child indices, see children) since the token has
+     * to come from the expression that is being evaluated.
+     */
+    static final class Result {
+        private final Object value;
+        private final String message; // null if there was no error
+        private final int[] path;
+
+        private Result(Object value, String message, int[] path) {
+            this.value = value;
+            this.message = message;
+            this.path = path;
+        }
+
+        /**
+         * @param expr the subexpression that was looked up
+         * @throws RuntimeError the memoized error, on expr's own operator
+         */
+        Object replay(Expr expr) {
+            if (message == null) {
+                return value;
+            }
+
+            Expr node = expr;
+            for (int index : path) {
+                node = children(node)[index];
+            }
+            throw new RuntimeError(operator(node), message);
+        }
+
+        boolean isError() {
+            return message != null;
+        }
+
+        Object value() {
+            return value;
+        }
+    }
+
+    // hashes a tree bottom up, adding keys for the subexpressions that are large
+    // enough and don't use variables
+    private static final class Hasher {
+        final Map<Expr, Key> keys = new IdentityHashMap<>();
+        private int size; // of the expression hashed last
+        private boolean usesVariables; // whether the expression hashed last does
+
+        long hash(Expr expr) {
+            long hash = expr.getClass().hashCode();
+            if (expr instanceof Expr.Literal) {
+                Object value = ((Expr.Literal) expr).value;
+                hash = mix(hash, value == null ? 0 : value.getClass().hashCode() * 31L + value.hashCode());
+            }
+            Token operator = operator(expr);
+            if (operator != null) {
+                hash = mix(hash, operator.type.ordinal());
+            }
+
+            int size = 1;
+            boolean usesVariables = expr instanceof Expr.Variable || expr instanceof Expr.Assign;
+            for (Expr child : children(expr)) {
+                hash = mix(hash, hash(child));
+                size += this.size;
+                usesVariables |= this.usesVariables;
+            }
+
+            if (size >= MIN_SIZE && !usesVariables) {
+                keys.put(expr, new Key(expr, hash, size));
+            }
+            this.size = size;
+            this.usesVariables = usesVariables;
+            return hash;
+        }
+    }
+
+    private static long mix(long hash, long value) {
+        // from MurmurHash3's 64 bit finalizer
+        long h = (hash ^ value) * 0xff51afd7ed558ccdL;
+        return h ^ (h >>> 33);
+    }
+
+    private static boolean sameStructure(Expr a, Expr b) {
+        if (a == b) {
+            return true;
+        }
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof Expr.Literal) {
+            // Double.equals, so -0 and 0 are different
+            return Objects.equals(((Expr.Literal) a).value, ((Expr.Literal) b).value);
+        }
+        Token operator = operator(a);
+        if (operator != null && operator.type != operator(b).type) {
+            return false;
+        }
+
+        Expr[] aChildren = children(a);
+        Expr[] bChildren = children(b);
+        for (int i = 0; i < aChildren.length; i++) {
+            if (!sameStructure(aChildren[i], bChildren[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the path from expr to the node with operator, null if there is none
+    private static int[] pathTo(Expr expr, Token operator) {
+        if (operator(expr) == operator) {
+            return new int[0];
+        }
+        Expr[] children = children(expr);
+        for (int i = 0; i < children.length; i++) {
+            int[] path = pathTo(children[i], operator);
+            if (path != null) {
+                int[] result = new int[path.length + 1];
+                result[0] = i;
+                System.arraycopy(path, 0, result, 1, path.length);
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static Token operator(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return ((Expr.Binary) expr).operator;
+        }
+        if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator;
+        }
+        return null;
+    }
+
+    private static final Expr[] NO_CHILDREN = {};
+
+    private static Expr[] children(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return new Expr[] { ((Expr.Binary) expr).left, ((Expr.Binary) expr).right };
+        }
+        if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            return new Expr[] { ternary.cond, ternary.ifTrue, ternary.orElse };
+        }
+        if (expr instanceof Expr.Unary) {
+            return new Expr[] { ((Expr.Unary) expr).right };
+        }
+        if (expr instanceof Expr.Grouping) {
+            return new Expr[] { ((Expr.Grouping) expr).expression };
+        }
+        if (expr instanceof Expr.Assign) {
+            return new Expr[] { ((Expr.Assign) expr).value };
+        }
+        return NO_CHILDREN;
+    }
+}
@@ -0,0 +1,75 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The global variables of an Interpreter. Like locals, globals are stored in
+ * an array: the Resolver turns every global name into a slot once, so reading
+ * or assigning one at runtime is an index and a check that it has been
+ * defined. Names keep their slots for the life of the Interpreter, so a REPL
+ * line can use a variable declared by an earlier one.
+ *
+ * A global may be used before it is declared (or without ever being declared),
+ * which is a runtime error only if that code actually runs.
+ */
+class Globals {
+    // the value of a slot whose variable has not been declared (yet)
+    private static final Object UNDEFINED = new Object();
+
+    private final Map<String, Integer> slots = new HashMap<>(); // only used by the Resolver
+    private Object[] values = new Object[16];
+
+    Globals() {
+        Arrays.fill(values, UNDEFINED);
+    }
+
+    /**
+     * @return the slot of the global called name, a new one the first time name
+     *         is seen
+     */
+    int slot(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(name, slot);
+            if (slot == values.length) {
+                int length = values.length;
+                values = Arrays.copyOf(values, length * 2);
+                Arrays.fill(values, length, values.length, UNDEFINED);
+            }
+        }
+        return slot;
+    }
+
+    /**
+     * @param slot from slot(String), -1 if name was never resolved
+     * @throws RuntimeError if the variable has not been declared
+     */
+    Object get(Token name, int slot) {
+        Object value = slot < 0 ? UNDEFINED : values[slot];
+        if (value == UNDEFINED) {
+            throw undefined(name);
+        }
+        return value;
+    }
+
+    void define(int slot, Object value) {
+        values[slot] = value;
+    }
+
+    /**
+     * @throws RuntimeError if the variable has not been declared
+     */
+    void assign(Token name, int slot, Object value) {
+        if (slot < 0 || values[slot] == UNDEFINED) {
+            throw undefined(name);
+        }
+        values[slot] = value;
+    }
+
+    static RuntimeError undefined(Token name) {
+        return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+}
@@ -1,22 +1,254 @@
 package com.craftinginterpreters.lox;
 
-class Interpreter implements Expr.Visitor<Object> {
-    void interpret(Expr expression) {
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+    // evaluate large expressions on all cores, see ParallelEvaluator
+    private static final boolean PARALLEL = Boolean.getBoolean("jlox.parallel");
+    // evaluate top level expressions without recursion, see StackEvaluator
+    private static final boolean STACK_SAFE = Boolean.getBoolean("jlox.stackSafe");
+
+    // null unless the current evaluation is limited, see evaluate(Expr, EvaluationBudget)
+    EvaluationBudget budget = null;
+
+    // keeps the shadow stack while profiling, see LoxProfiler
+    LoxProfiler profiler = null;
+
+    // where print writes, null for System.out. StreamRunner buffers it
+    PrintWriter output = null;
+
+    // slots for the globals, see Resolver
+    final Globals globals = new Globals();
+    // the variables of the innermost block being executed, null at the top level
+    private Environment environment = null;
+    // created on first use, only with -Djlox.stackSafe=true
+    private StackEvaluator stackEvaluator = null;
+    // top level expressions found here are evaluated by these Specializer nodes
+    // instead, which skip the runtime type checks the operand types make
+    // unnecessary. See specialize
+    Map<Expr, Specializer.Node> specialized = Collections.emptyMap();
+
+    /**
+     * @return a MemoizingInterpreter if -Djlox.memoSize is set, otherwise a plain
+     *         Interpreter. Always a plain one with -Djlox.stackSafe=true: the
+     *         StackEvaluator doesn't look subexpressions up, and hashing them
+     *         for the memo recurses as deep as evaluating them would
+     */
+    static Interpreter create() {
+        if (STACK_SAFE) {
+            return new Interpreter();
+        }
+        ExprMemo memo = ExprMemo.shared();
+        return memo != null ? new MemoizingInterpreter(memo) : new Interpreter();
+    }
+
+    /**
+     * Executes resolved statements (see Resolver), or reports the runtime error
+     * that stopped them.
+     * 
+     * @return false if there was a runtime error
+     */
+    boolean interpret(List<Stmt> statements) {
         try {
-            Object value = evaluate(expression);
-            System.out.println(stringify(value));
+            execute(statements);
+            return true;
         } catch (RuntimeError error) {
             Lox.runtimeError(error);
+            return false;
         }
     }
 
+    /**
+     * Same as interpret, but leaves reporting the runtime error to the caller.
+     *
+     * @throws RuntimeError
+     */
+    void execute(List<Stmt> statements) {
+        int depth = profiler == null ? 0 : profiler.enter(null);
+        try {
+            for (Stmt statement : statements) {
+                execute(statement);
+            }
+        } finally {
+            if (profiler != null) {
+                profiler.exit(depth);
+            }
+        }
+    }
+
+    private void execute(Stmt stmt) {
+        if (profiler != null && stmt instanceof Stmt.Var) {
+            int depth = profiler.enter(((Stmt.Var) stmt).name);
+            try {
+                stmt.accept(this);
+            } finally {
+                profiler.exit(depth);
+            }
+            return;
+        }
+        stmt.accept(this);
+    }
+
+    // the expression of a statement is a top level expression
+    private Object value(Expr expr) {
+        return PARALLEL ? ParallelEvaluator.shared().evaluate(expr, this) : evaluate(expr, null);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.slots == 0) {
+            // no variables of its own, so no Environment either (see Resolver)
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+            return null;
+        }
+
+        Environment previous = environment;
+        environment = new Environment(previous, stmt.slots);
+        try {
+            for (Stmt statement : stmt.statements) {
+                execute(statement);
+            }
+        } finally {
+            environment = previous;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        value(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        String value = stringify(value(stmt.expression));
+        if (output == null) {
+            System.out.println(value);
+        } else {
+            output.println(value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Object value = stmt.initializer == null ? null : value(stmt.initializer);
+        if (stmt.depth < 0) {
+            globals.define(stmt.slot, value);
+        } else {
+            environment.slots[stmt.slot] = value;
+        }
+        return null;
+    }
+
+    /**
+     * Type checks statements into checker, and makes the Specializer nodes of
+     * their top level expressions on the way, to be set as specialized. The
+     * nodes are not used within a budget or while profiling, which have to see
+     * every node, and not made at all with -Djlox.stackSafe=true since they
+     * recurse.
+     *
+     * @param statements resolved, or resolved before the nodes are evaluated
+     */
+    Map<Expr, Specializer.Node> specialize(List<Stmt> statements, TypeChecker checker) {
+        if (STACK_SAFE) {
+            checker.check(statements);
+            return Collections.emptyMap();
+        }
+        Map<Expr, Specializer.Node> nodes = new IdentityHashMap<>();
+        specialize(statements, checker, nodes);
+        return nodes;
+    }
+
+    private void specialize(List<Stmt> statements, TypeChecker checker, Map<Expr, Specializer.Node> nodes) {
+        for (Stmt statement : statements) {
+            Expr expr = null;
+            if (statement instanceof Stmt.Block) {
+                specialize(((Stmt.Block) statement).statements, checker, nodes);
+            } else if (statement instanceof Stmt.Expression) {
+                expr = ((Stmt.Expression) statement).expression;
+            } else if (statement instanceof Stmt.Print) {
+                expr = ((Stmt.Print) statement).expression;
+            } else if (statement instanceof Stmt.Var) {
+                expr = ((Stmt.Var) statement).initializer;
+            }
+            if (expr != null) {
+                nodes.put(expr, Specializer.specialize(expr, checker, this));
+            }
+        }
+    }
+
+    /**
+     * Evaluates expr as a top level expression i.e. within the limits of budget
+     * (may be null for no limits) and recording it in LoxMetrics.
+     * 
+     * @throws BudgetExceededError if the budget runs out or is cancelled
+     */
+    Object evaluate(Expr expr, EvaluationBudget budget) {
+        long started = System.nanoTime();
+        this.budget = budget;
+        try {
+            if (budget == null && profiler == null) {
+                Specializer.Node node = specialized.get(expr);
+                if (node != null) {
+                    return node.evaluate();
+                }
+            }
+            return STACK_SAFE ? stackEvaluator().evaluate(expr) : evaluate(expr);
+        } catch (RuntimeError error) {
+            LoxMetrics.recordRuntimeError(error.getMessage());
+            throw error;
+        } finally {
+            this.budget = null;
+            LoxMetrics.recordEvaluation(System.nanoTime() - started);
+        }
+    }
+
+    private StackEvaluator stackEvaluator() {
+        if (stackEvaluator == null) {
+            stackEvaluator = new StackEvaluator(this);
+        }
+        return stackEvaluator;
+    }
+
     // the entry point
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
+        if (budget != null) {
+            budget.step(expr);
+        }
+        if (profiler != null) {
+            return profiled(expr);
+        }
         return expr.accept(this);
     }
 
+    private Object profiled(Expr expr) {
+        Token token = LoxProfiler.token(expr);
+        if (token == null) {
+            return expr.accept(this);
+        }
+
+        int depth = profiler.enter(token);
+        try {
+            return expr.accept(this);
+        } finally {
+            profiler.exit(depth);
+        }
+    }
+
     @Override
     public Object visitTernaryExpr(Expr.Ternary expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.TERNARY.increment();
+        }
+
         Object condition = evaluate(expr.cond);
         Object ifTrue = evaluate(expr.ifTrue);
         Object orElse = evaluate(expr.orElse);
@@ -31,58 +263,143 @@ class Interpreter implements Expr.Visitor<Object> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.BINARY.increment();
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        return binary(expr.operator, left, right, budget);
+    }
+
+    @Override
+    public Object visitGroupingExpr(Expr.Grouping expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.GROUPING.increment();
+        }
+        return evaluate(expr.expression);
+    }
+
+    @Override
+    public Object visitLiteralExpr(Expr.Literal expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.LITERAL.increment();
+        }
+        return expr.value;
+    }
+
+    @Override
+    public Object visitVariableExpr(Expr.Variable expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.VARIABLE.increment();
+        }
+
+        return lookUp(expr);
+    }
+
+    @Override
+    public Object visitAssignExpr(Expr.Assign expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.ASSIGN.increment();
+        }
+
+        Object value = evaluate(expr.value);
+        assign(expr, value);
+        return value;
+    }
+
+    // variable access, shared with StackEvaluator
+
+    Object lookUp(Expr.Variable expr) {
+        if (expr.depth < 0) {
+            return globals.get(expr.name, expr.slot);
+        }
+        return environment.ancestor(expr.depth).slots[expr.slot];
+    }
+
+    void assign(Expr.Assign expr, Object value) {
+        if (expr.depth < 0) {
+            globals.assign(expr.name, expr.slot, value);
+        } else {
+            environment.ancestor(expr.depth).slots[expr.slot] = value;
+        }
+    }
+
+    @Override
+    public Object visitUnaryExpr(Expr.Unary expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.UNARY.increment();
+        }
+
+        Object right = evaluate(expr.right);
+        return unary(expr.operator, right);
+    }
 
-        switch (expr.operator.type) {
+    /**
+     * Applies a unary operator to an already evaluated operand, checking its type.
+     */
+    static Object unary(Token operator, Object right) {
+        switch (operator.type) {
+            case BANG:
+                return !isTruthy(right);
+            case MINUS:
+                checkNumberOperand(operator, right);
+                return -(double) right;
+        }
+        // should never be reached
+        return null;
+    }
+
+    /**
+     * Applies a binary operator to already evaluated operands, checking their
+     * types. Shared with the evaluators that do not walk the tree themselves.
+     * 
+     * @param budget may be null, only used to limit string concatenation
+     */
+    static Object binary(Token operator, Object left, Object right, EvaluationBudget budget) {
+        switch (operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left <= (double) right;
             case BANG_EQUAL:
                 return !isEqual(left, right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left - (double) right;
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
                     return (double) left + (double) right;
                 }
 
-                boolean leftIsString = left instanceof String;
-                boolean rightIsString = right instanceof String;
-
-                if (leftIsString && rightIsString) {
-                    return (String) left + (String) right;
-                }
-
-                if (leftIsString) {
-                    return (String) left + stringify(right);
-                }
-
-                if (rightIsString) {
-                    return stringify(left) + (String) right;
+                if (left instanceof String || right instanceof String) {
+                    String leftString = left instanceof String ? (String) left : stringify(left);
+                    String rightString = right instanceof String ? (String) right : stringify(right);
+                    if (budget != null) {
+                        budget.checkStringLength(operator, (long) leftString.length() + rightString.length());
+                    }
+                    return leftString + rightString;
                 }
 
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 if ((double) right == 0.0) {
-                    throw new RuntimeError(expr.operator, "Division by zero.");
+                    throw new RuntimeError(operator, "Division by zero.");
                 }
                 return (double) left / (double) right;
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
+                checkNumberOperands(operator, left, right);
                 return (double) left * (double) right;
         }
 
@@ -90,39 +407,14 @@ class Interpreter implements Expr.Visitor<Object> {
         return null;
     }
 
-    @Override
-    public Object visitGroupingExpr(Expr.Grouping expr) {
-        return evaluate(expr.expression);
-    }
-
-    @Override
-    public Object visitLiteralExpr(Expr.Literal expr) {
-        return expr.value;
-    }
-
-    @Override
-    public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = evaluate(expr.right);
-
-        switch (expr.operator.type) {
-            case BANG:
-                return !isTruthy(right);
-            case MINUS:
-                checkNumberOperand(expr.operator, right);
-                return -(double) right;
-        }
-        // should never be reached
-        return null;
-    }
-
-    private void checkNumberOperand(Token operator, Object operand) {
+    private static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) {
             return;
         }
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) {
             return;
         }
@@ -134,7 +426,7 @@ class Interpreter implements Expr.Visitor<Object> {
      * This is similar to Ruby where 'false' and 'nil' are falsey
      * and everything else is truthy.
      */
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) {
             return false;
         }
@@ -147,7 +439,7 @@ class Interpreter implements Expr.Visitor<Object> {
     /**
      * Lox does not perform implicit conversions when checking for equality.
      */
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) {
             return true;
         }
@@ -159,7 +451,7 @@ class Interpreter implements Expr.Visitor<Object> {
         return a.equals(b);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) {
             return "nil";
         }
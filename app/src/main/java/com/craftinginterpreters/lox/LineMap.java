@@ -0,0 +1,120 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * Maps character offsets in a source to lines and columns, and renders error
+ * snippets like:
+ * 
+ * <pre>
+ *     15 | function(first, second,);
+ *                                 ^-- Here.
+ * </pre>
+ * 
+ * Tokens only store their offset, the table of line starts is built the first
+ * time it is needed, i.e. only when an error has to be shown.
+ */
+class LineMap {
+    private final String source;
+    private final int firstLine;
+    // offsets of the first character of each line. Volatile since the map of a
+    // CompiledExpr is shared by the threads evaluating it
+    private volatile int[] lineStarts = null;
+
+    /**
+     * @param firstLine number of the first line of source, usually 1
+     */
+    LineMap(String source, int firstLine) {
+        this.source = source;
+        this.firstLine = firstLine;
+    }
+
+    /**
+     * @return the line number of the character at offset
+     */
+    int line(int offset) {
+        return firstLine + lineIndex(offset);
+    }
+
+    /**
+     * @return the 1-based column of the character at offset
+     */
+    int column(int offset) {
+        return offset - lineStarts()[lineIndex(offset)] + 1;
+    }
+
+    /**
+     * @return the text of line number line without its line break, null if
+     *         source has no such line
+     */
+    String text(int line) {
+        int[] starts = lineStarts();
+        int index = line - firstLine;
+        if (index < 0 || index >= starts.length) {
+            return null;
+        }
+        int end = source.indexOf('\n', starts[index]);
+        String text = source.substring(starts[index], end == -1 ? source.length() : end);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    /**
+     * @param offset where the error is
+     * @param length how many characters to underline, at least one is
+     * @return the line containing offset, with a caret under the error
+     */
+    String snippet(int offset, int length) {
+        int index = lineIndex(offset);
+        int start = lineStarts()[index];
+        int end = source.indexOf('\n', start);
+        if (end == -1) {
+            end = source.length();
+        }
+        String text = source.substring(start, end);
+
+        String gutter = String.format("%6d | ", firstLine + index);
+        StringBuilder snippet = new StringBuilder();
+        snippet.append(gutter).append(text).append('\n');
+
+        for (int i = 0; i < gutter.length(); i++) {
+            snippet.append(' ');
+        }
+        // keep tabs so the caret lines up with the text above
+        for (int i = start; i < offset && i < end; i++) {
+            snippet.append(source.charAt(i) == '\t' ? '\t' : ' ');
+        }
+        int carets = Math.max(1, Math.min(length, end - offset));
+        for (int i = 0; i < carets; i++) {
+            snippet.append('^');
+        }
+        snippet.append("-- Here.");
+        return snippet.toString();
+    }
+
+    private int lineIndex(int offset) {
+        int[] starts = lineStarts();
+        int index = Arrays.binarySearch(starts, offset);
+        // not a line start: binarySearch returns -(insertion point) - 1 and we want
+        // the line before the insertion point
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int[] lineStarts() {
+        int[] lineStarts = this.lineStarts;
+        if (lineStarts == null) {
+            int[] starts = new int[16];
+            int count = 1; // line 0 starts at offset 0
+            for (int i = 0; i < source.length(); i++) {
+                if (source.charAt(i) == '\n') {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, count * 2);
+                    }
+                    starts[count++] = i + 1;
+                }
+            }
+            lineStarts = Arrays.copyOf(starts, count);
+            this.lineStarts = lineStarts;
+        }
+        return lineStarts;
+    }
+}
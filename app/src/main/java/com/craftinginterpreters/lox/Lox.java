@@ -1,33 +1,95 @@
 package com.craftinginterpreters.lox;
 
 import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class Lox {
-  private static final Interpreter interpreter = new Interpreter();
+  private static final Interpreter interpreter = Interpreter.create();
   static boolean hadError = false; // who sets this flag? Probably the scanner
   static boolean hadRuntimeError = false;
+  // report type errors before evaluating instead of failing at runtime
+  static final boolean typeCheck = Boolean.getBoolean("jlox.typeCheck");
+  // syntax errors reported after this many are dropped and scanning and parsing
+  // stop early, so that a binary file fails fast instead of printing millions
+  // of errors
+  static final int maxErrors = Integer.getInteger("jlox.maxErrors", 100);
+  // printed errors since the start of the current run
+  private static int reportedErrors = 0;
+  // printed errors are collected here and written out once per run rather than
+  // with a System.err.println each
+  private static final StringBuilder errorOutput = new StringBuilder();
+  private static final int ERROR_OUTPUT_FLUSH_SIZE = 1 << 16;
+
+  // when set, syntax errors on this thread are collected here instead of being
+  // printed (see compile)
+  private static final ThreadLocal<List<Diagnostic>> collectedErrors = new ThreadLocal<>();
+
+  // the source that the tokens reported on this thread come from, used to show
+  // where in the line an error is
+  private static final ThreadLocal<LineMap> currentSource = new ThreadLocal<>();
 
   public static void main(String[] args) throws IOException {
-    if (args.length > 1) {
-      System.out.println("Usgae: jlox [script]");
+    if (Boolean.getBoolean("jlox.jmx")) {
+      registerMetrics();
+    }
+
+    if (args.length == 2 && args[0].equals("--serve")) {
+      new LoxServer(args[1]).serve();
+    } else if (args.length > 1 || (args.length == 1 && args[0].equals("--serve"))) {
+      System.out.println("Usgae: jlox [script] | jlox --stream | jlox --serve <port | socket path>");
       System.exit(64);
+    } else if (args.length == 1 && args[0].equals("--stream")) {
+      new StreamRunner(System.in, new FileOutputStream(FileDescriptor.out)).run(interpreter);
     } else if (args.length == 1) {
       runFile(args[0]);
+    } else if (!isTerminal()) {
+      // input is piped in rather than typed, skip the prompt and go fast
+      new StreamRunner(System.in, new FileOutputStream(FileDescriptor.out)).run(interpreter);
     } else {
       runPrompt();
     }
   }
 
+  /**
+   * @return true if stdin is a terminal. System.console() is null as soon as
+   *         stdin or stdout is not, e.g. for jlox > out.txt, so then look at
+   *         where /dev/stdin leads: e.g. to /dev/pts/0 for a terminal, to a
+   *         file or nowhere (a pipe) otherwise. Where there is no /dev/stdin,
+   *         stdin counts as piped, --stream forces it either way.
+   */
+  private static boolean isTerminal() {
+    if (System.console() != null) {
+      return true;
+    }
+    try {
+      String stdin = Paths.get("/dev/stdin").toRealPath().toString();
+      return stdin.startsWith("/dev/pts/") || stdin.startsWith("/dev/tty");
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   private static void runFile(String path) throws IOException {
     // readAllBytes is not suitable for large files acc. to docs
     byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    String source = new String(bytes, Charset.defaultCharset());
+
+    String profile = System.getProperty("jlox.profile");
+    if (profile == null) {
+      run(source);
+    } else {
+      profile(source, Paths.get(profile));
+    }
 
     if (hadError) {
       System.exit(65);
@@ -38,6 +100,28 @@ public class Lox {
     }
   }
 
+  /**
+   * Runs source with a LoxProfiler sampling it and writes the results next to
+   * path, see LoxProfiler.write.
+   */
+  private static void profile(String source, Path path) throws IOException {
+    LoxProfiler profiler = new LoxProfiler(Long.getLong("jlox.profileInterval", LoxProfiler.DEFAULT_INTERVAL_MICROS));
+    interpreter.profiler = profiler;
+    profiler.start();
+    try {
+      run(source);
+    } finally {
+      interpreter.profiler = null;
+      try {
+        profiler.stop();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    profiler.write(path, new LineMap(source, 1));
+    System.err.println("Profile written to " + path + ".collapsed and " + path + ".lines.txt");
+  }
+
   private static void runPrompt() throws IOException {
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
@@ -55,43 +139,269 @@ public class Lox {
   }
 
   private static void run(String source) {
+    long started = System.nanoTime();
+    resetErrorCount();
+    // the events are null unless a flight recording has been started
+    LoxEvents.Scan scanEvent = LoxEvents.beginScan();
     Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
+    setSource(scanner.lineMap());
+    try {
+      List<Token> tokens = scanner.scanTokens();
+      LoxEvents.endScan(scanEvent, source, tokens);
 
-    Parser parser = new Parser(tokens);
-    Expr expression = parser.parse();
+      LoxEvents.Parse parseEvent = LoxEvents.beginParse();
+      Parser parser = new Parser(tokens);
+      List<Stmt> statements = parser.parseProgram();
+      LoxEvents.endParse(parseEvent, tokens, statements);
+      LoxMetrics.recordParse(System.nanoTime() - started);
 
-    if (hadError) { // either scanner or parser errors should set this
-      return;
+      if (hadError) { // either scanner or parser errors should set this
+        return;
+      }
+
+      new Resolver(interpreter.globals).resolve(statements);
+      if (hadError) {
+        return;
+      }
+
+      if (typeCheck && !specialize(statements, scanner.lineMap())) {
+        return;
+      }
+
+      LoxEvents.Evaluate evaluateEvent = LoxEvents.beginEvaluate();
+      boolean succeeded = interpreter.interpret(statements);
+      LoxEvents.endEvaluate(evaluateEvent, statements, succeeded);
+    } finally {
+      setSource(null);
+      flushErrors();
     }
+  }
+
+  /**
+   * Reports operators that are certain to fail before evaluating anything, see
+   * TypeChecker, and sets hadError if there are any. Otherwise has the
+   * interpreter skip the type checks that are proven unnecessary.
+   *
+   * @return false if there were type errors
+   */
+  private static boolean specialize(List<Stmt> statements, LineMap source) {
+    TypeChecker checker = new TypeChecker(source);
+    Map<Expr, Specializer.Node> nodes = interpreter.specialize(statements, checker);
+    for (Diagnostic error : checker.errors()) {
+      print(error);
+      hadError = true;
+    }
+    if (hadError) {
+      return false;
+    }
+    interpreter.specialized = nodes;
+    return true;
+  }
+
+  /**
+   * Compiles a single expression so that it can be evaluated repeatedly without
+   * scanning and parsing it again. Compiled expressions are cached by source
+   * text, so compiling the same string twice is cheap. The cache size can be set
+   * with the 'jlox.cacheSize' system property, see CompiledExpr.cacheStats for
+   * its statistics.
+   * 
+   * @throws CompileError if source has syntax errors
+   */
+  public static CompiledExpr compile(String source) {
+    return ExprCache.shared().get(source);
+  }
+
+  /**
+   * Evaluates a single expression and returns its value or what went wrong.
+   * Unlike compile and CompiledExpr.evaluate this never throws or prints, which
+   * makes it the cheapest way to check lots of inputs that may well be broken.
+   * Successfully parsed expressions are cached like with compile.
+   */
+  public static EvalResult evaluate(String source) {
+    return evaluate(source, null);
+  }
+
+  /**
+   * Same as evaluate(String) but within the limits of budget (may be null).
+   */
+  public static EvalResult evaluate(String source, EvaluationBudget budget) {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    try {
+      CompiledExpr compiled = ExprCache.shared().get(source, diagnostics);
+      if (compiled == null) {
+        return EvalResult.failure(diagnostics);
+      }
+
+      try {
+        return EvalResult.success(compiled.evaluate(budget));
+      } catch (RuntimeError error) {
+        diagnostics.add(Diagnostic.runtime(error, compiled.lineMap()));
+        return EvalResult.failure(diagnostics);
+      }
+    } catch (StackOverflowError error) {
+      // too deep for the recursive parser or interpreter, which has no location
+      diagnostics.add(Diagnostic.runtime(new RuntimeError(null, "Expression nested too deeply."), null));
+      return EvalResult.failure(diagnostics);
+    }
+  }
+
+  /**
+   * Makes the interpreter's metrics (evaluation rates, latency percentiles,
+   * error counts and cache hit rates) available over JMX as
+   * "com.craftinginterpreters.lox:type=Metrics". This happens automatically in
+   * server mode or when the 'jlox.jmx' system property is true.
+   */
+  public static void registerMetrics() {
+    LoxMetrics.register();
+  }
 
-    interpreter.interpret(expression);
+  /**
+   * Start collecting syntax errors reported on the current thread into the
+   * returned list instead of printing them. Must be paired with
+   * endCollectingErrors.
+   */
+  static List<Diagnostic> beginCollectingErrors() {
+    List<Diagnostic> errors = new ArrayList<>();
+    collectedErrors.set(errors);
+    return errors;
+  }
+
+  static void endCollectingErrors() {
+    collectedErrors.remove();
+  }
+
+  /**
+   * Tells error reporting on this thread which source the reported tokens and
+   * offsets belong to, so that errors can show the offending line. Pass null
+   * once done with the source.
+   */
+  static void setSource(LineMap source) {
+    if (source == null) {
+      currentSource.remove();
+    } else {
+      currentSource.set(source);
+    }
   }
 
   /**
    * Report an error to the user by printing to System.err and sets
    * hadError.
+   * 
+   * @param offset where in the source the error is, see Token.offset
+   */
+  static void error(int line, int offset, String message) {
+    report(line, offset, 1, "", message);
+  }
+
+  /**
+   * Same as error(int, int, String) for an error that spans length characters,
+   * e.g. a run of unexpected characters.
+   */
+  static void error(int line, int offset, int length, String message) {
+    report(line, offset, length, "", message);
+  }
+
+  /**
+   * Starts counting printed errors towards maxErrors from zero again, as every
+   * run does. Also used by StreamRunner, whose input lines are independent like
+   * REPL lines.
+   */
+  static void resetErrorCount() {
+    reportedErrors = 0;
+  }
+
+  /**
+   * @return true once maxErrors syntax errors have been reported on this thread
+   *         (since the start of the run, or of collecting), after which
+   *         further errors are dropped and scanning and parsing can stop
+   */
+  static boolean tooManyErrors() {
+    List<Diagnostic> errors = collectedErrors.get();
+    // one more for the "Too many errors" note
+    return (errors != null ? errors.size() : reportedErrors) > maxErrors;
+  }
+
+  private static void report(int line, int offset, int length, String where, String message) {
+    if (collectedErrors.get() == null) {
+      hadError = true; // it would make more sense for this to be set in error but then we have
+                       // multiple overloads for it
+    }
+    if (tooManyErrors()) {
+      return;
+    }
+
+    LoxMetrics.recordSyntaxError(message);
+    count(Diagnostic.syntax(line, where, message, currentSource.get(), offset, length));
+  }
+
+  /**
+   * Prints an error collected on another thread (see beginCollectingErrors),
+   * counting it towards maxErrors like the errors reported on this one.
    */
-  static void error(int line, String message) {
-    report(line, "", message);
+  static void printCollected(Diagnostic error) {
+    if (!tooManyErrors()) {
+      count(error);
+    }
+  }
+
+  // adds a note to the error that reaches the limit
+  private static void count(Diagnostic error) {
+    if (add(error) == maxErrors) {
+      add(Diagnostic.syntax(error.line(), "", "Too many errors, giving up.", null, -1, 0));
+    }
+  }
+
+  // collects or prints error, returns how many there are now
+  private static int add(Diagnostic error) {
+    List<Diagnostic> errors = collectedErrors.get();
+    if (errors != null) {
+      errors.add(error);
+      return errors.size();
+    }
+    print(error);
+    return ++reportedErrors;
   }
 
-  private static void report(int line, String where, String message) {
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true; // it would make more sense for this to be set in error but then we have
-                     // multiple overloads for it
+  private static void print(Diagnostic error) {
+    errorOutput.append(error).append(System.lineSeparator());
+    String snippet = error.snippet();
+    if (snippet != null) {
+      errorOutput.append(snippet).append(System.lineSeparator());
+    }
+    if (errorOutput.length() >= ERROR_OUTPUT_FLUSH_SIZE) {
+      flushErrors();
+    }
+  }
+
+  /**
+   * Writes out the errors printed since the last flush, see errorOutput.
+   */
+  static void flushErrors() {
+    if (errorOutput.length() > 0) {
+      System.err.print(errorOutput);
+      System.err.flush();
+      errorOutput.setLength(0);
+    }
   }
 
   static void error(Token token, String message) {
     if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
+      report(token.line, token.offset, 1, " at end", message);
     } else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+      report(token.line, token.offset, token.lexeme.length(), " at '" + token.lexeme + "'", message);
     }
   }
 
   static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+    runtimeError(error, currentSource.get());
+  }
+
+  /**
+   * @param source the source error.token comes from, may be null if unknown
+   */
+  static void runtimeError(RuntimeError error, LineMap source) {
+    print(Diagnostic.runtime(error, source));
+    flushErrors();
     hadRuntimeError = true;
   }
 }
@@ -0,0 +1,292 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the phases of Lox.run. They are always
+ * compiled in but cost (next to) nothing unless a recording is running, e.g.
+ * 
+ * <pre>
+ * {@code
+ *      jcmd <pid> JFR.start name=jlox settings=profile filename=jlox.jfr
+ * }
+ * </pre>
+ * 
+ * Payload fields that are expensive to compute (node counts) are only filled in
+ * once we know the event will be committed.
+ * 
+ * The first use of an event class makes the JVM set up its flight recorder
+ * support, which takes a few hundred milliseconds. So the begin* methods
+ * return null (and the end* methods do nothing) until a recording has been
+ * started in this JVM, either on the command line or later with jcmd.
+ */
+class LoxEvents {
+    private LoxEvents() {
+    }
+
+    @Name("jlox.Scan")
+    @Label("Scan")
+    @Category("jlox")
+    @StackTrace(false)
+    static class Scan extends Event {
+        @Label("Characters")
+        @Description("Length of the scanned source")
+        long characters;
+
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("jlox.Parse")
+    @Label("Parse")
+    @Category("jlox")
+    @StackTrace(false)
+    static class Parse extends Event {
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Nodes")
+        @Description("Number of Expr nodes in the statements that parsed")
+        int nodes;
+    }
+
+    @Name("jlox.Evaluate")
+    @Label("Evaluate")
+    @Category("jlox")
+    @StackTrace(false)
+    static class Evaluate extends Event {
+        @Label("Nodes")
+        int nodes;
+
+        @Label("Failed")
+        @Description("Whether evaluation raised a runtime error")
+        boolean failed;
+    }
+
+    /**
+     * Evaluation counts per Expr type since startup, only emitted when counting
+     * is enabled (see EvalCounters).
+     */
+    @Name("jlox.NodeCounts")
+    @Label("Evaluated Nodes")
+    @Category("jlox")
+    @Period("1 s")
+    @StackTrace(false)
+    static class NodeCounts extends Event {
+        @Label("Ternary")
+        long ternary;
+
+        @Label("Binary")
+        long binary;
+
+        @Label("Grouping")
+        long grouping;
+
+        @Label("Literal")
+        long literal;
+
+        @Label("Unary")
+        long unary;
+
+        @Label("Variable")
+        long variable;
+
+        @Label("Assign")
+        long assign;
+    }
+
+    /**
+     * A CompiledExpr moving up a tier, see TierManager. Emitted from the thread
+     * that does the promotion, its duration is how long that took.
+     */
+    @Name("jlox.Promotion")
+    @Label("Promotion")
+    @Category("jlox")
+    @StackTrace(false)
+    static class Promotion extends Event {
+        @Label("Source")
+        String source;
+
+        @Label("Tier")
+        @Description("The tier the expression was promoted to")
+        String tier;
+
+        @Label("Evaluations")
+        @Description("Evaluations of the expression before it was promoted")
+        long evaluations;
+    }
+
+    static Scan beginScan() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Scan event = new Scan();
+        event.begin();
+        return event;
+    }
+
+    static void endScan(Scan event, String source, List<Token> tokens) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.characters = source.length();
+            event.tokens = tokens.size();
+            event.commit();
+        }
+    }
+
+    static Parse beginParse() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Parse event = new Parse();
+        event.begin();
+        return event;
+    }
+
+    static void endParse(Parse event, List<Token> tokens, List<Stmt> statements) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.tokens = tokens.size();
+            event.nodes = countNodes(statements);
+            event.commit();
+        }
+    }
+
+    static Evaluate beginEvaluate() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Evaluate event = new Evaluate();
+        event.begin();
+        return event;
+    }
+
+    static void endEvaluate(Evaluate event, List<Stmt> statements, boolean succeeded) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.nodes = countNodes(statements);
+            event.failed = !succeeded;
+            event.commit();
+        }
+    }
+
+    static Promotion beginPromotion() {
+        if (!FlightRecorder.isInitialized()) {
+            return null;
+        }
+        Promotion event = new Promotion();
+        event.begin();
+        return event;
+    }
+
+    static void endPromotion(Promotion event, String source, TierManager.Tier tier, long evaluations) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.tier = tier.name();
+            event.evaluations = evaluations;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the number of nodes in the tree rooted at expr
+     */
+    static int countNodes(Expr expr) {
+        if (expr == null) {
+            return 0;
+        }
+        return expr.accept(NODE_COUNTER);
+    }
+
+    /**
+     * @return the number of Expr nodes in the statements
+     */
+    static int countNodes(List<Stmt> statements) {
+        int nodes = 0;
+        for (Stmt statement : statements) {
+            nodes += statement.accept(STMT_NODE_COUNTER);
+        }
+        return nodes;
+    }
+
+    private static final Stmt.Visitor<Integer> STMT_NODE_COUNTER = new Stmt.Visitor<Integer>() {
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            return countNodes(stmt.statements);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            return countNodes(stmt.expression);
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            return countNodes(stmt.expression);
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            return countNodes(stmt.initializer);
+        }
+    };
+
+    private static final Expr.Visitor<Integer> NODE_COUNTER = new Expr.Visitor<Integer>() {
+        @Override
+        public Integer visitTernaryExpr(Expr.Ternary expr) {
+            return 1 + expr.cond.accept(this) + expr.ifTrue.accept(this) + expr.orElse.accept(this);
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            return 1 + expr.left.accept(this) + expr.right.accept(this);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return 1 + expr.expression.accept(this);
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            return 1 + expr.right.accept(this);
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            return 1 + expr.value.accept(this);
+        }
+    };
+}
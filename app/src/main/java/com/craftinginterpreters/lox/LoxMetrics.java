@@ -0,0 +1,226 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the numbers behind LoxMetricsMXBean. The record* methods are called
+ * on every run/evaluation, so all of them are lock-free. The MBean itself is
+ * only registered when asked to (see register), since starting the platform
+ * MBean server is too slow for short script runs.
+ */
+class LoxMetrics implements LoxMetricsMXBean {
+    static final String OBJECT_NAME = "com.craftinginterpreters.lox:type=Metrics";
+
+    // error messages embed e.g. limits, so don't let a misbehaving client blow up
+    // the maps
+    private static final int MAX_DISTINCT_MESSAGES = 100;
+    private static final String OTHER_MESSAGES = "(other)";
+
+    static final LoxMetrics INSTANCE = new LoxMetrics();
+
+    private final LongAdder evaluations = new LongAdder();
+    private final RateMeter evaluationRate = new RateMeter();
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram evaluationLatency = new LatencyHistogram();
+    private final RateMeter syntaxErrorRate = new RateMeter();
+    private final RateMeter runtimeErrorRate = new RateMeter();
+    private final Map<String, LongAdder> syntaxErrors = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> runtimeErrors = new ConcurrentHashMap<>();
+
+    private static boolean registered = false;
+
+    private LoxMetrics() {
+    }
+
+    /**
+     * Registers the MBean with the platform MBean server, doing nothing if that
+     * already happened.
+     */
+    static synchronized void register() {
+        if (registered) {
+            return;
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException error) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, error);
+        }
+    }
+
+    /**
+     * @param nanos time spent scanning and parsing one source
+     */
+    static void recordParse(long nanos) {
+        INSTANCE.parseLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos time spent evaluating one expression
+     */
+    static void recordEvaluation(long nanos) {
+        INSTANCE.evaluations.increment();
+        INSTANCE.evaluationRate.mark();
+        INSTANCE.evaluationLatency.record(nanos);
+    }
+
+    static void recordSyntaxError(String message) {
+        INSTANCE.syntaxErrorRate.mark();
+        count(INSTANCE.syntaxErrors, message);
+    }
+
+    static void recordRuntimeError(String message) {
+        INSTANCE.runtimeErrorRate.mark();
+        count(INSTANCE.runtimeErrors, message);
+    }
+
+    private static void count(Map<String, LongAdder> counts, String message) {
+        LongAdder counter = counts.get(message);
+        if (counter == null) {
+            if (counts.size() >= MAX_DISTINCT_MESSAGES) {
+                message = OTHER_MESSAGES;
+            }
+            counter = counts.computeIfAbsent(message, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> counts) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((message, counter) -> snapshot.put(message, counter.sum()));
+        return snapshot;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public double getEvaluationsPerSecond() {
+        return evaluationRate.perSecond();
+    }
+
+    @Override
+    public double getParseLatencyP50Micros() {
+        return micros(parseLatency.percentile(0.5));
+    }
+
+    @Override
+    public double getParseLatencyP99Micros() {
+        return micros(parseLatency.percentile(0.99));
+    }
+
+    @Override
+    public double getParseLatencyP999Micros() {
+        return micros(parseLatency.percentile(0.999));
+    }
+
+    @Override
+    public double getEvaluationLatencyP50Micros() {
+        return micros(evaluationLatency.percentile(0.5));
+    }
+
+    @Override
+    public double getEvaluationLatencyP99Micros() {
+        return micros(evaluationLatency.percentile(0.99));
+    }
+
+    @Override
+    public double getEvaluationLatencyP999Micros() {
+        return micros(evaluationLatency.percentile(0.999));
+    }
+
+    @Override
+    public double getSyntaxErrorsPerSecond() {
+        return syntaxErrorRate.perSecond();
+    }
+
+    @Override
+    public double getRuntimeErrorsPerSecond() {
+        return runtimeErrorRate.perSecond();
+    }
+
+    @Override
+    public Map<String, Long> getSyntaxErrorCounts() {
+        return snapshot(syntaxErrors);
+    }
+
+    @Override
+    public Map<String, Long> getRuntimeErrorCounts() {
+        return snapshot(runtimeErrors);
+    }
+
+    @Override
+    public double getCompileCacheHitRate() {
+        return CompiledExpr.cacheStats().hitRate();
+    }
+
+    @Override
+    public long getCompileCacheEvictionCount() {
+        return CompiledExpr.cacheStats().evictionCount();
+    }
+
+    @Override
+    public long getMemoHitCount() {
+        ExprMemo memo = ExprMemo.shared();
+        return memo == null ? 0 : memo.stats().hitCount();
+    }
+
+    @Override
+    public long getMemoMissCount() {
+        ExprMemo memo = ExprMemo.shared();
+        return memo == null ? 0 : memo.stats().missCount();
+    }
+
+    @Override
+    public double getMemoHitRate() {
+        ExprMemo memo = ExprMemo.shared();
+        return memo == null ? 0 : memo.stats().hitRate();
+    }
+
+    @Override
+    public long getInterpretedEvaluationCount() {
+        return TierManager.shared().evaluationCount(TierManager.Tier.INTERPRETED);
+    }
+
+    @Override
+    public long getSpecializedEvaluationCount() {
+        return TierManager.shared().evaluationCount(TierManager.Tier.SPECIALIZED);
+    }
+
+    @Override
+    public long getFoldedEvaluationCount() {
+        return TierManager.shared().evaluationCount(TierManager.Tier.FOLDED);
+    }
+
+    @Override
+    public long getSpecializedPromotionCount() {
+        return TierManager.shared().promotionCount(TierManager.Tier.SPECIALIZED);
+    }
+
+    @Override
+    public long getFoldedPromotionCount() {
+        return TierManager.shared().promotionCount(TierManager.Tier.FOLDED);
+    }
+
+    @Override
+    public void resetLatencies() {
+        parseLatency.reset();
+        evaluationLatency.reset();
+    }
+}
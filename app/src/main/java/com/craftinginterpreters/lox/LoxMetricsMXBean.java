@@ -0,0 +1,76 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Map;
+
+/**
+ * Live metrics of the interpreter, registered as
+ * "com.craftinginterpreters.lox:type=Metrics". Latencies are in microseconds and
+ * rates are averaged over the last 10 seconds.
+ */
+public interface LoxMetricsMXBean {
+    long getEvaluationCount();
+
+    double getEvaluationsPerSecond();
+
+    double getParseLatencyP50Micros();
+
+    double getParseLatencyP99Micros();
+
+    double getParseLatencyP999Micros();
+
+    double getEvaluationLatencyP50Micros();
+
+    double getEvaluationLatencyP99Micros();
+
+    double getEvaluationLatencyP999Micros();
+
+    double getSyntaxErrorsPerSecond();
+
+    double getRuntimeErrorsPerSecond();
+
+    /**
+     * @return number of syntax errors since startup by message
+     */
+    Map<String, Long> getSyntaxErrorCounts();
+
+    /**
+     * @return number of runtime errors since startup by message
+     */
+    Map<String, Long> getRuntimeErrorCounts();
+
+    double getCompileCacheHitRate();
+
+    long getCompileCacheEvictionCount();
+
+    /**
+     * @return subexpression values reused from the memo, 0 unless -Djlox.memoSize
+     *         is set
+     */
+    long getMemoHitCount();
+
+    long getMemoMissCount();
+
+    double getMemoHitRate();
+
+    /**
+     * @return evaluations of compiled expressions (Lox.compile and server
+     *         requests) that walked the tree since startup, see TierManager
+     */
+    long getInterpretedEvaluationCount();
+
+    long getSpecializedEvaluationCount();
+
+    long getFoldedEvaluationCount();
+
+    /**
+     * @return compiled expressions promoted to SPECIALIZED since startup
+     */
+    long getSpecializedPromotionCount();
+
+    long getFoldedPromotionCount();
+
+    /**
+     * Clears the latency histograms, e.g. after a deployment.
+     */
+    void resetLatencies();
+}
@@ -0,0 +1,230 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A sampling profiler for Lox code. A Java profiler shows that the time goes
+ * into Interpreter.visitBinaryExpr; this shows which line of the script it
+ * goes to.
+ *
+ * While profiling, the Interpreter keeps a shadow stack of the tokens it is
+ * evaluating: operators, variables and variable declarations (see enter and
+ * exit). A daemon thread looks at the stack every -Djlox.profileInterval
+ * microseconds (default 1000) and counts what it sees. There are no locks,
+ * the interpreter only writes an array slot and an int or two per node: like a
+ * seqlock, a version that changes whenever a frame is popped tells the sampler
+ * that the frames it copied may have been overwritten meanwhile, and it tries
+ * again.
+ *
+ * Enabled for scripts with -Djlox.profile=path, which writes two files when the
+ * script is done:
+ *
+ * - path.collapsed: one line per distinct stack with the number of samples
+ * that saw it, e.g. "jlox;total (line 3);+ (line 3);* (line 3) 42". This is
+ * the input of flamegraph.pl and speedscope.
+ *
+ * - path.lines.txt: per line of the script, the share of samples in which it
+ * was innermost (self) and anywhere on the stack (total).
+ */
+class LoxProfiler {
+    static final long DEFAULT_INTERVAL_MICROS = 1000;
+    // a sample of a deeper stack (e.g. in a 1 + 1 + ... chain) only looks at this
+    // many of its outermost and of its innermost frames
+    static final int EDGE_FRAMES = 128;
+    // longer lines are cut short in the report
+    private static final int MAX_SOURCE_WIDTH = 80;
+
+    private final long intervalNanos;
+
+    // the shadow stack, only written by the interpreter's thread. frames[0] is
+    // null while interpreting, and the stack is empty otherwise
+    private Token[] frames = new Token[64];
+    private int depth = 0;
+    private int version = 0; // bumped before a frame can be reused
+
+    // only touched by the sampler thread until stop returns
+    private Token[] snapshot = new Token[64];
+    private final Map<String, Integer> stacks = new HashMap<>();
+    // line -> { self, total, last sample counted in total }
+    private final Map<Integer, int[]> lines = new TreeMap<>();
+    private int samples = 0;
+
+    private volatile boolean stopped = false;
+    private Thread sampler = null;
+
+    LoxProfiler(long intervalMicros) {
+        this.intervalNanos = TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+    }
+
+    /**
+     * @return the token an expression is shown as, null if it has none (it is
+     *         then part of the frame of the expression around it)
+     */
+    static Token token(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return ((Expr.Binary) expr).operator;
+        } else if (expr instanceof Expr.Unary) {
+            return ((Expr.Unary) expr).operator;
+        } else if (expr instanceof Expr.Variable) {
+            return ((Expr.Variable) expr).name;
+        } else if (expr instanceof Expr.Assign) {
+            return ((Expr.Assign) expr).name;
+        }
+        return null;
+    }
+
+    /**
+     * Pushes a frame, null for the root frame of a program.
+     *
+     * @return the depth to exit to
+     */
+    int enter(Token token) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, 2 * depth);
+        }
+        frames[depth] = token;
+        VarHandle.storeStoreFence(); // so the sampler never sees the depth before the frame
+        return depth++;
+    }
+
+    /**
+     * Pops the frames down to depth, also the ones an error skipped.
+     */
+    void exit(int depth) {
+        version++;
+        VarHandle.storeStoreFence(); // before the next enter overwrites a frame
+        this.depth = depth;
+    }
+
+    void start() {
+        sampler = new Thread(() -> {
+            while (!stopped) {
+                LockSupport.parkNanos(intervalNanos);
+                sample();
+            }
+        }, "jlox-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void stop() throws InterruptedException {
+        stopped = true;
+        sampler.join();
+    }
+
+    // runs on the sampler thread, or in tests
+    void sample() {
+        int depth = -1;
+        for (int attempt = 0; attempt < 3 && depth < 0; attempt++) {
+            depth = copyStack();
+        }
+        if (depth <= 0) {
+            return; // not interpreting (e.g. still parsing), or too busy to catch
+        }
+
+        samples++;
+        Token[] frames = snapshot;
+        StringBuilder stack = new StringBuilder("jlox");
+        String previous = null;
+        Token innermost = null;
+        for (int i = 1; i < depth; i++) {
+            if (i == EDGE_FRAMES && depth > 2 * EDGE_FRAMES) {
+                stack.append(";...");
+                previous = null;
+                i = depth - EDGE_FRAMES;
+            }
+            Token token = frames[i];
+            if (token == null) {
+                continue;
+            }
+            innermost = token;
+
+            int[] counts = lines.computeIfAbsent(token.line, line -> new int[3]);
+            if (counts[2] != samples) { // total counts each line once per sample
+                counts[2] = samples;
+                counts[1]++;
+            }
+
+            // a chain of the same operator on the same line is one frame
+            String frame = token.lexeme + " (line " + token.line + ")";
+            if (!frame.equals(previous)) {
+                stack.append(';').append(frame);
+                previous = frame;
+            }
+        }
+        if (innermost != null) {
+            lines.get(innermost.line)[0]++;
+        }
+        stacks.merge(stack.toString(), 1, Integer::sum);
+    }
+
+    /**
+     * @return the depth of the stack copied into snapshot, -1 if frames were
+     *         popped while copying
+     */
+    private int copyStack() {
+        int version = this.version;
+        VarHandle.loadLoadFence();
+        Token[] frames = this.frames;
+        int depth = Math.min(this.depth, frames.length);
+        if (depth > snapshot.length) {
+            snapshot = new Token[Math.max(depth, 2 * snapshot.length)];
+        }
+        System.arraycopy(frames, 0, snapshot, 0, depth);
+        VarHandle.loadLoadFence();
+        return version == this.version ? depth : -1;
+    }
+
+    /**
+     * Writes path.collapsed and path.lines.txt, see the class comment. Call
+     * after stop.
+     *
+     * @param source the script, for showing its lines in the report
+     */
+    void write(Path path, LineMap source) throws IOException {
+        try (PrintWriter out = writer(path, ".collapsed")) {
+            for (Map.Entry<String, Integer> stack : new TreeMap<>(stacks).entrySet()) {
+                out.println(stack.getKey() + " " + stack.getValue());
+            }
+        }
+
+        List<Map.Entry<Integer, int[]>> byTime = new ArrayList<>(lines.entrySet());
+        byTime.sort((a, b) -> a.getValue()[0] != b.getValue()[0] ? b.getValue()[0] - a.getValue()[0]
+                : b.getValue()[1] - a.getValue()[1]);
+        try (PrintWriter out = writer(path, ".lines.txt")) {
+            out.printf("%d samples, one every %d us%n%n", samples, TimeUnit.NANOSECONDS.toMicros(intervalNanos));
+            out.printf("%6s %7s %7s  %s%n", "line", "self", "total", "source");
+            for (Map.Entry<Integer, int[]> line : byTime) {
+                String text = source.text(line.getKey());
+                text = text == null ? "" : text.strip();
+                if (text.length() > MAX_SOURCE_WIDTH) {
+                    text = text.substring(0, MAX_SOURCE_WIDTH - 3) + "...";
+                }
+                out.printf("%6d %6.1f%% %6.1f%%  %s%n", line.getKey(), percent(line.getValue()[0]),
+                        percent(line.getValue()[1]), text);
+            }
+        }
+    }
+
+    private double percent(int count) {
+        return samples == 0 ? 0 : 100.0 * count / samples;
+    }
+
+    private static PrintWriter writer(Path path, String extension) throws IOException {
+        Writer writer = Files.newBufferedWriter(path.resolveSibling(path.getFileName() + extension));
+        return new PrintWriter(writer);
+    }
+}
@@ -0,0 +1,129 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Evaluates newline delimited expressions sent over a local socket, so that
+ * clients do not pay for a JVM start per evaluation. Every line gets exactly
+ * one line back: either the value (formatted like the REPL does) or an error
+ * starting with "error: ", also when the expression is nested too deeply or
+ * jlox itself fails, which is logged to stderr. Clients may pipeline requests i.e. send several
+ * lines without waiting for the answers, the answers come back in order.
+ * 
+ * Each connection is served by its own virtual thread. Parsed expressions are
+ * shared between connections through the compile cache (see Lox.compile).
+ * Every evaluation can be limited with the system properties read by
+ * EvaluationBudget.fromSystemProperties.
+ */
+class LoxServer {
+    private final SocketAddress address;
+
+    /**
+     * @param spec either a TCP port (bound to the loopback interface only) or the
+     *             path of a Unix domain socket
+     */
+    LoxServer(String spec) {
+        if (spec.chars().allMatch(Character::isDigit)) {
+            this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+        } else {
+            this.address = UnixDomainSocketAddress.of(spec);
+        }
+    }
+
+    void serve() throws IOException {
+        boolean isUnix = address instanceof UnixDomainSocketAddress;
+        Path socketFile = isUnix ? ((UnixDomainSocketAddress) address).getPath() : null;
+        if (isUnix) {
+            // a stale socket file from an earlier run would make bind fail
+            Files.deleteIfExists(socketFile);
+        }
+
+        try (ServerSocketChannel server = isUnix
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+                ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.bind(address);
+            LoxMetrics.register();
+            System.err.println("jlox listening on " + server.getLocalAddress());
+
+            for (;;) {
+                SocketChannel client = server.accept();
+                connections.submit(() -> handle(client));
+            }
+        } finally {
+            if (isUnix) {
+                Files.deleteIfExists(socketFile);
+            }
+        }
+    }
+
+    /**
+     * Answers the requests of client until it closes the connection, then closes
+     * client.
+     */
+    void handle(SocketChannel client) {
+        try (client;
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(
+                        new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8))) {
+            Interpreter interpreter = Interpreter.create();
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.write(evaluate(interpreter, line));
+                out.write('\n');
+
+                // only flush once every request the client has sent so far is
+                // answered, pipelined requests then share a single write
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch (IOException error) {
+            // the client went away, nothing we can report it to
+        }
+    }
+
+    private static String evaluate(Interpreter interpreter, String source) {
+        try {
+            CompiledExpr compiled = Lox.compile(source);
+            EvaluationBudget budget = EvaluationBudget.fromSystemProperties();
+            // without limits (or a memo to consult) the compiled expression evaluates
+            // itself in its current tier, see TierManager. Limits are charged per
+            // node, which only the Interpreter does
+            Object value = budget == null && ExprMemo.shared() == null ? compiled.evaluate()
+                    : interpreter.evaluate(compiled.expression, budget);
+            return Interpreter.stringify(value);
+        } catch (CompileError error) {
+            return "error: " + String.join(" ", error.errors());
+        } catch (RuntimeError error) {
+            return "error: " + error.getMessage() + (error.token == null ? "" : " [line " + error.token.line + "]");
+        } catch (StackOverflowError error) {
+            return "error: Expression nested too deeply.";
+        } catch (RuntimeException error) {
+            // a bug in jlox, the connection and the server stay usable
+            System.err.println("jlox failed to evaluate " + source);
+            error.printStackTrace();
+            return "error: Internal error: " + error;
+        }
+    }
+}
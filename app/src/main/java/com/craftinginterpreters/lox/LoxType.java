@@ -0,0 +1,29 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * The static type of an expression as inferred by TypeChecker. UNKNOWN means
+ * the type can only be found out by evaluating the expression.
+ */
+enum LoxType {
+    NUMBER, STRING, BOOLEAN, NIL, UNKNOWN;
+
+    static LoxType of(Object value) {
+        if (value == null) {
+            return NIL;
+        }
+        if (value instanceof Double) {
+            return NUMBER;
+        }
+        if (value instanceof String) {
+            return STRING;
+        }
+        if (value instanceof Boolean) {
+            return BOOLEAN;
+        }
+        return UNKNOWN;
+    }
+
+    boolean isKnown() {
+        return this != UNKNOWN;
+    }
+}
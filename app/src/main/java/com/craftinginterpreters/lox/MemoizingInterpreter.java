@@ -0,0 +1,78 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An Interpreter that looks every large enough subexpression up in an ExprMemo
+ * before evaluating it, and remembers its value (or runtime error) afterwards.
+ * Meant for REPL sessions and servers that see the same large subexpressions
+ * over and over; for anything else the lookups cost more than they save.
+ *
+ * A memoized subexpression costs as many steps of an EvaluationBudget as
+ * evaluating it would, so limits apply the same with or without the memo.
+ *
+ * ExprMemo walks the whole expression recursively, so this is not for
+ * -Djlox.stackSafe=true, where Interpreter.create doesn't use it.
+ */
+class MemoizingInterpreter extends Interpreter {
+    private final ExprMemo memo;
+    // the keys of the expression being evaluated, see ExprMemo.keys
+    private Map<Expr, ExprMemo.Key> keys = Collections.emptyMap();
+
+    MemoizingInterpreter(ExprMemo memo) {
+        this.memo = memo;
+    }
+
+    // the nodes would evaluate the subexpressions without looking them up
+    @Override
+    Map<Expr, Specializer.Node> specialize(List<Stmt> statements, TypeChecker checker) {
+        checker.check(statements);
+        return Collections.emptyMap();
+    }
+
+    @Override
+    Object evaluate(Expr expr, EvaluationBudget budget) {
+        keys = memo.keys(expr);
+        try {
+            return super.evaluate(expr, budget);
+        } finally {
+            keys = Collections.emptyMap();
+        }
+    }
+
+    @Override
+    Object evaluate(Expr expr) {
+        ExprMemo.Key key = keys.get(expr);
+        if (key == null) {
+            return super.evaluate(expr);
+        }
+
+        ExprMemo.Result result = memo.get(key);
+        if (result != null && !exceedsBudget(result)) {
+            if (budget != null) {
+                budget.step(expr, key.size());
+            }
+            return result.replay(expr);
+        }
+
+        try {
+            Object value = super.evaluate(expr);
+            memo.putValue(key, value);
+            return value;
+        } catch (BudgetExceededError error) {
+            throw error; // says nothing about the expression
+        } catch (RuntimeError error) {
+            memo.putError(key, expr, error);
+            throw error;
+        }
+    }
+
+    // a memoized string the budget would not have allowed to be built, evaluate
+    // again so that the error comes from the right operator
+    private boolean exceedsBudget(ExprMemo.Result result) {
+        return budget != null && !result.isError() && result.value() instanceof String
+                && !budget.allowsStringLength(((String) result.value()).length());
+    }
+}
@@ -0,0 +1,378 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates large expressions on a ForkJoinPool. Expressions without variables
+ * have no side effects so the operands of an operator can be evaluated at the
+ * same time, the only thing that has to stay sequential is which error is
+ * reported: the result is always the same value or the same RuntimeError (down
+ * to the token) as the Interpreter's. Expressions with variables are evaluated
+ * sequentially.
+ *
+ * A chain of left associative operators like a, b, c, d or 1 + 2 - 3 is one
+ * left-deep spine of Binary nodes, so the spine is flattened into its operands
+ * which are then split between tasks. Subtrees below the threshold are handed
+ * to the Interpreter since forking costs more than evaluating them.
+ *
+ * Example Usage:
+ *
+ * <pre>
+ * {@code
+ *      Object value = ParallelEvaluator.shared().evaluate(expression);
+ * }
+ * </pre>
+ */
+class ParallelEvaluator {
+    // nodes, below this a subtree takes a few microseconds to evaluate which is
+    // about what handing it to another thread costs
+    static final int DEFAULT_THRESHOLD = 4096;
+
+    private static class Shared {
+        static final ParallelEvaluator INSTANCE = new ParallelEvaluator(ForkJoinPool.commonPool(),
+                Integer.getInteger("jlox.parallelThreshold", DEFAULT_THRESHOLD));
+    }
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    // only reads its budget, which stays null, so it can be shared by the workers
+    private final Interpreter interpreter = new Interpreter();
+
+    /**
+     * @param threshold subtrees with fewer nodes are evaluated on one thread
+     */
+    ParallelEvaluator(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.threshold = threshold;
+    }
+
+    /**
+     * @return an evaluator on the common pool, with the threshold set by
+     *         -Djlox.parallelThreshold
+     */
+    static ParallelEvaluator shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Evaluates expr as a top level expression, recording it in LoxMetrics.
+     *
+     * @throws RuntimeError the error the Interpreter would have thrown
+     */
+    Object evaluate(Expr expr) {
+        return evaluate(expr, measure(expr));
+    }
+
+    /**
+     * Evaluates a top level expression of a program that interpreter runs. The
+     * workers can't see interpreter's variables, so an expression that uses any
+     * is left to interpreter, as is one that is too small to split.
+     */
+    Object evaluate(Expr expr, Interpreter interpreter) {
+        Map<Expr, Integer> sizes = measure(expr);
+        if (!sizes.containsKey(expr)) {
+            return interpreter.evaluate(expr, null);
+        }
+        return evaluate(expr, sizes);
+    }
+
+    /**
+     * Same as evaluate(Expr) but with the sizes from an earlier measure(expr), so
+     * that an expression that is evaluated repeatedly is only measured once.
+     */
+    Object evaluate(Expr expr, Map<Expr, Integer> sizes) {
+        long started = System.nanoTime();
+        try {
+            if (!sizes.containsKey(expr)) {
+                return interpreter.evaluate(expr); // too small to split
+            }
+
+            Operands root = new Operands(List.of(expr), sizes);
+            pool.invoke(root);
+            if (root.errors[0] != null) {
+                throw root.errors[0];
+            }
+            return root.values[0];
+        } catch (RuntimeError error) {
+            LoxMetrics.recordRuntimeError(error.getMessage());
+            throw error;
+        } finally {
+            LoxMetrics.recordEvaluation(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Finds the subtrees of expr that are worth splitting, i.e. those with at
+     * least threshold nodes.
+     *
+     * @return the size of each of those subtrees and of each of their operands,
+     *         empty if expr is too small to split or uses variables. Safe to
+     *         share between threads once returned.
+     */
+    Map<Expr, Integer> measure(Expr expr) {
+        Map<Expr, Integer> sizes = new IdentityHashMap<>();
+        // most expressions are small, find out without walking all of a large one
+        if (estimateSize(expr, threshold) >= threshold && measure(expr, sizes) < 0) {
+            sizes.clear();
+        }
+        return sizes;
+    }
+
+    /**
+     * Counts the nodes of expr, but stops counting at limit so that finding out
+     * whether a subtree is small never costs more than evaluating limit nodes.
+     *
+     * @return the number of nodes in expr or limit, whichever is smaller
+     */
+    static int estimateSize(Expr expr, int limit) {
+        return limit - count(expr, limit);
+    }
+
+    // every node takes one off budget before its children are counted, so this
+    // never recurses deeper than budget
+    private static int count(Expr expr, int budget) {
+        budget--;
+        if (budget <= 0) {
+            return 0;
+        }
+
+        if (expr instanceof Expr.Binary) {
+            budget = count(((Expr.Binary) expr).left, budget);
+            return budget > 0 ? count(((Expr.Binary) expr).right, budget) : 0;
+        }
+        if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            budget = count(ternary.cond, budget);
+            budget = budget > 0 ? count(ternary.ifTrue, budget) : 0;
+            return budget > 0 ? count(ternary.orElse, budget) : 0;
+        }
+        if (expr instanceof Expr.Unary) {
+            return count(((Expr.Unary) expr).right, budget);
+        }
+        if (expr instanceof Expr.Grouping) {
+            return count(((Expr.Grouping) expr).expression, budget);
+        }
+        if (expr instanceof Expr.Assign) {
+            return count(((Expr.Assign) expr).value, budget);
+        }
+        return budget;
+    }
+
+    // returns the size of expr, or -1 as soon as a variable turns up. See
+    // measure(Expr) for what goes into sizes
+    private int measure(Expr expr, Map<Expr, Integer> sizes) {
+        if (expr instanceof Expr.Variable || expr instanceof Expr.Assign) {
+            return -1;
+        }
+
+        int size;
+        if (expr instanceof Expr.Binary) {
+            // walk down the left spine iteratively, long operator chains are too deep
+            // to recurse into. The operands are the same ones evaluateSpine finds
+            List<Expr> operands = new ArrayList<>();
+            size = 0;
+            Expr left = expr;
+            while (left instanceof Expr.Binary || left instanceof Expr.Grouping) {
+                size++;
+                if (left instanceof Expr.Binary) {
+                    operands.add(((Expr.Binary) left).right);
+                    left = ((Expr.Binary) left).left;
+                } else {
+                    left = ((Expr.Grouping) left).expression;
+                }
+            }
+            operands.add(left);
+
+            int[] operandSizes = new int[operands.size()];
+            for (int i = operands.size() - 1; i >= 0; i--) {
+                operandSizes[i] = measure(operands.get(i), sizes);
+                if (operandSizes[i] < 0) {
+                    return -1;
+                }
+                size += operandSizes[i];
+            }
+            if (size >= threshold) {
+                for (int i = 0; i < operandSizes.length; i++) {
+                    sizes.put(operands.get(i), operandSizes[i]);
+                }
+            }
+        } else if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            int cond = measure(ternary.cond, sizes);
+            int ifTrue = measure(ternary.ifTrue, sizes);
+            int orElse = measure(ternary.orElse, sizes);
+            if (cond < 0 || ifTrue < 0 || orElse < 0) {
+                return -1;
+            }
+            size = 1 + cond + ifTrue + orElse;
+            if (size >= threshold) {
+                sizes.put(ternary.cond, cond);
+                sizes.put(ternary.ifTrue, ifTrue);
+                sizes.put(ternary.orElse, orElse);
+            }
+        } else if (expr instanceof Expr.Unary) {
+            size = measure(((Expr.Unary) expr).right, sizes);
+            if (size < 0) {
+                return -1;
+            }
+            size++;
+        } else if (expr instanceof Expr.Grouping) {
+            size = measure(((Expr.Grouping) expr).expression, sizes);
+            if (size < 0) {
+                return -1;
+            }
+            size++;
+        } else {
+            size = 1;
+        }
+
+        if (size >= threshold) {
+            sizes.put(expr, size);
+        }
+        return size;
+    }
+
+    /**
+     * Evaluates a list of independent expressions, each into its own slot so that
+     * the caller can decide which error came first. Errors never escape compute,
+     * the pool would rethrow them from another thread.
+     */
+    private class Operands extends RecursiveAction {
+        final Object[] values;
+        final RuntimeError[] errors;
+        private final List<Expr> exprs;
+        private final Map<Expr, Integer> sizes;
+        private final long[] sizesBefore; // total size of the exprs before i
+        private final int from;
+        private final int to;
+
+        Operands(List<Expr> exprs, Map<Expr, Integer> sizes) {
+            this.exprs = exprs;
+            this.sizes = sizes;
+            this.values = new Object[exprs.size()];
+            this.errors = new RuntimeError[exprs.size()];
+            this.sizesBefore = new long[exprs.size() + 1];
+            for (int i = 0; i < exprs.size(); i++) {
+                sizesBefore[i + 1] = sizesBefore[i] + sizes.getOrDefault(exprs.get(i), 1);
+            }
+            this.from = 0;
+            this.to = exprs.size();
+        }
+
+        private Operands(Operands whole, int from, int to) {
+            this.exprs = whole.exprs;
+            this.sizes = whole.sizes;
+            this.values = whole.values;
+            this.errors = whole.errors;
+            this.sizesBefore = whole.sizesBefore;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            long size = sizesBefore[to] - sizesBefore[from];
+            if (to - from == 1 || size < threshold) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        Expr expr = exprs.get(i);
+                        // a single operand may be large enough to split further
+                        boolean small = sizesBefore[i + 1] - sizesBefore[i] < threshold;
+                        values[i] = small ? interpreter.evaluate(expr) : split(expr, sizes);
+                    } catch (RuntimeError error) {
+                        errors[i] = error;
+                    }
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Operands(this, from, middle), new Operands(this, middle, to));
+        }
+    }
+
+    // runs on a worker, splitting expr further if it is large
+    private Object evaluateOnWorker(Expr expr, Map<Expr, Integer> sizes) {
+        Integer size = sizes.get(expr);
+        if (size == null || size < threshold) {
+            return interpreter.evaluate(expr);
+        }
+        return split(expr, sizes);
+    }
+
+    private Object split(Expr expr, Map<Expr, Integer> sizes) {
+        if (expr instanceof Expr.Binary) {
+            return evaluateSpine((Expr.Binary) expr, sizes);
+        }
+
+        if (expr instanceof Expr.Ternary) {
+            Expr.Ternary ternary = (Expr.Ternary) expr;
+            Operands operands = new Operands(List.of(ternary.cond, ternary.ifTrue, ternary.orElse), sizes);
+            operands.invoke();
+            // the Interpreter evaluates all three in this order
+            for (RuntimeError error : operands.errors) {
+                if (error != null) {
+                    throw error;
+                }
+            }
+            return Interpreter.isTruthy(operands.values[0]) ? operands.values[1] : operands.values[2];
+        }
+
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            return Interpreter.unary(unary.operator, evaluateOnWorker(unary.right, sizes));
+        }
+
+        if (expr instanceof Expr.Grouping) {
+            return evaluateOnWorker(((Expr.Grouping) expr).expression, sizes);
+        }
+
+        return interpreter.evaluate(expr);
+    }
+
+    /**
+     * Evaluates ((a op1 b) op2 c) op3 d by evaluating a, b, c and d in parallel and
+     * then applying the operators from left to right.
+     */
+    private Object evaluateSpine(Expr.Binary expr, Map<Expr, Integer> sizes) {
+        List<Token> operators = new ArrayList<>();
+        List<Expr> operands = new ArrayList<>();
+        Expr left = expr;
+        while (left instanceof Expr.Binary || left instanceof Expr.Grouping) {
+            if (left instanceof Expr.Binary) {
+                operators.add(((Expr.Binary) left).operator);
+                operands.add(((Expr.Binary) left).right);
+                left = ((Expr.Binary) left).left;
+            } else {
+                left = ((Expr.Grouping) left).expression;
+            }
+        }
+        operands.add(left);
+        // collected right to left
+        Collections.reverse(operators);
+        Collections.reverse(operands);
+
+        Operands evaluated = new Operands(operands, sizes);
+        evaluated.invoke();
+
+        // the Interpreter evaluates a, b, applies op1, evaluates c, applies op2 and so
+        // on, so an error from an operator beats one from any later operand
+        if (evaluated.errors[0] != null) {
+            throw evaluated.errors[0];
+        }
+        Object value = evaluated.values[0];
+        for (int i = 1; i < operands.size(); i++) {
+            if (evaluated.errors[i] != null) {
+                throw evaluated.errors[i];
+            }
+            value = Interpreter.binary(operators.get(i - 1), value, evaluated.values[i], null);
+        }
+        return value;
+    }
+}
@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static com.craftinginterpreters.lox.TokenType.*;
@@ -9,17 +10,36 @@ import static com.craftinginterpreters.lox.TokenType.*;
  * expression grammar into functions, going from lower to higher precedence.
  */
 class Parser {
-    // a sentinel class for parse errors
+    // a sentinel class for parse errors, it is only used to unwind the parser so it
+    // skips capturing a stack trace
     private static class ParseError extends RuntimeException {
+        ParseError() {
+            super(null, null, false, false);
+        }
     }
 
-    private final List<Token> tokens;
+    private List<Token> tokens;
     private int current = 0;
 
     Parser(List<Token> tokens) {
         this.tokens = tokens;
     }
 
+    /**
+     * Prepares the parser for parsing a new list of tokens, so that one parser
+     * can be reused for many small inputs.
+     */
+    void reset(List<Token> tokens) {
+        this.tokens = tokens;
+        this.current = 0;
+    }
+
+    /**
+     * Parses a single expression, for callers that only deal in expressions (the
+     * server and Lox.compile).
+     *
+     * @return null if there was a syntax error
+     */
     Expr parse() {
         try {
             return commaExpr();
@@ -28,18 +48,131 @@ class Parser {
         }
     }
 
+    /**
+     * Parses a whole program. An expression without a ';' at the very end of the
+     * input is printed, so that typing 1 + 2 at the prompt (or running a script
+     * that is just an expression) shows 3 like it always has.
+     *
+     * program --> declaration* EOF
+     *
+     * @return the statements that parsed, statements with syntax errors are left
+     *         out (after reporting them) and parsing carries on with the next one
+     */
+    List<Stmt> parseProgram() {
+        List<Stmt> statements = new ArrayList<>();
+        while (!isAtEnd()) {
+            Stmt statement = declaration();
+            if (statement != null) {
+                statements.add(statement);
+            }
+        }
+        return statements;
+    }
+
+    // declaration --> varDecl | statement
+    private Stmt declaration() {
+        try {
+            if (match(VAR)) {
+                return varDeclaration();
+            }
+            return statement();
+        } catch (ParseError error) {
+            if (Lox.tooManyErrors()) {
+                current = tokens.size() - 1; // give up, straight to EOF
+                return null;
+            }
+            synchronize();
+            return null;
+        }
+    }
+
+    // varDecl --> "var" IDENTIFIER ( "=" comma-expr )? ";"
+    private Stmt varDeclaration() {
+        Token name = consume(IDENTIFIER, "Expect variable name.");
+
+        Expr initializer = null;
+        if (match(EQUAL)) {
+            initializer = commaExpr();
+        }
+
+        consume(SEMICOLON, "Expect ';' after variable declaration.");
+        return new Stmt.Var(name, initializer);
+    }
+
+    // statement --> exprStmt | printStmt | block
+    private Stmt statement() {
+        if (match(PRINT)) {
+            return printStatement();
+        }
+        if (match(LEFT_BRACE)) {
+            return new Stmt.Block(block());
+        }
+        return expressionStatement();
+    }
+
+    // printStmt --> "print" comma-expr ";"
+    private Stmt printStatement() {
+        Expr value = commaExpr();
+        consume(SEMICOLON, "Expect ';' after value.");
+        return new Stmt.Print(value);
+    }
+
+    // exprStmt --> comma-expr ";"
+    private Stmt expressionStatement() {
+        Expr expr = commaExpr();
+        if (isAtEnd()) {
+            return new Stmt.Print(expr); // the value of the last line, see parseProgram
+        }
+        consume(SEMICOLON, "Expect ';' after expression.");
+        return new Stmt.Expression(expr);
+    }
+
+    // block --> "{" declaration* "}"
+    private List<Stmt> block() {
+        List<Stmt> statements = new ArrayList<>();
+        while (!check(RIGHT_BRACE) && !isAtEnd()) {
+            Stmt statement = declaration();
+            if (statement != null) {
+                statements.add(statement);
+            }
+        }
+
+        consume(RIGHT_BRACE, "Expect '}' after block.");
+        return statements;
+    }
+
     // lowest precedence, left associative
-    // comma-expr --> expression ( "," expression )*
+    // comma-expr --> assignment ( "," assignment )*
     private Expr commaExpr() {
-        Expr expr = ternary();
+        Expr expr = assignment();
         while (match(COMMA)) {
             Token operator = previous();
-            Expr right = ternary();
+            Expr right = assignment();
             expr = new Expr.Binary(expr, operator, right);
         }
         return expr;
     }
 
+    // right associative, a = b = 1 assigns 1 to both
+    // assignment --> IDENTIFIER "=" assignment | ternary
+    private Expr assignment() {
+        Expr expr = ternary();
+
+        if (match(EQUAL)) {
+            Token equals = previous();
+            Expr value = assignment();
+
+            if (expr instanceof Expr.Variable) {
+                Token name = ((Expr.Variable) expr).name;
+                return new Expr.Assign(name, value);
+            }
+
+            // no need to synchronize, the parser knows where it is
+            error(equals, "Invalid assignment target.");
+        }
+        return expr;
+    }
+
     // ternary is higher precedence than comma
     // ternary --> expr '?' expr ':' ( ( expr '?' expr ':')* | expr )
     private Expr ternary() {
@@ -139,6 +272,10 @@ class Parser {
             return new Expr.Literal(previous().literal);
         }
 
+        if (match(IDENTIFIER)) {
+            return new Expr.Variable(previous());
+        }
+
         if (match(LEFT_PAREN)) {
             Expr expr = expression();
             consume(RIGHT_PAREN, "Expect ')' after expression.");
@@ -224,8 +361,6 @@ class Parser {
      * a token that could be the beginning of the next statement. We do this so that
      * the parser does not stop after encountering the first error but tries to
      * report as many errors as possible.
-     * 
-     * TODO: This is not used yet since we do not have statements yet.
      */
     private void synchronize() {
         advance();
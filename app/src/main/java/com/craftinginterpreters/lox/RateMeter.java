@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts events per second over a sliding window of the last few seconds.
+ * Recording is lock-free: every second has a slot in a ring and a slot is
+ * reclaimed (reset) by the first event that lands in it in a new second. Two
+ * threads racing to reclaim the same slot can lose a handful of events, which
+ * is fine for a rate.
+ */
+class RateMeter {
+    private static final int WINDOW_SECONDS = 10;
+    // one extra slot for the current, still incomplete, second
+    private static final int SLOTS = WINDOW_SECONDS + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    RateMeter() {
+        for (int i = 0; i < SLOTS; i++) {
+            seconds.set(i, -1);
+        }
+    }
+
+    void mark() {
+        long second = now();
+        int slot = (int) (second % SLOTS);
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+            counts.set(slot, 0);
+        }
+        counts.incrementAndGet(slot);
+    }
+
+    /**
+     * @return the average number of events per second over the last complete
+     *         seconds of the window
+     */
+    double perSecond() {
+        long current = now();
+        long total = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            long second = seconds.get(i);
+            if (second < current && second >= current - WINDOW_SECONDS) {
+                total += counts.get(i);
+            }
+        }
+        return (double) total / WINDOW_SECONDS;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+}
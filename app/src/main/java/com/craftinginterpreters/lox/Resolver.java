@@ -0,0 +1,215 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A static pass between the parser and the interpreter that works out where
+ * every variable lives, so that the Interpreter never looks a variable up by
+ * name. A local variable gets (depth, slot): the number of blocks between the
+ * use and the declaration, and the index of the variable in the declaring
+ * block's Environment. A global gets depth -1 and its slot in Globals.
+ *
+ * Blocks that declare no variables get no scope (and no Environment at
+ * runtime), so they don't count towards depth.
+ *
+ * Expressions are walked with an explicit stack, so that a chain of a few
+ * hundred thousand operators resolves without overflowing the thread stack.
+ *
+ * Errors are reported through Lox.error like syntax errors.
+ *
+ * Example Usage:
+ *
+ * <pre>
+ * {@code
+ *      List<Stmt> statements = parser.parseProgram();
+ *      new Resolver(interpreter.globals).resolve(statements);
+ * }
+ * </pre>
+ */
+class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // a local variable of a scope, not defined until its initializer is resolved
+    private static class Local {
+        final int slot;
+        boolean defined = false;
+
+        Local(int slot) {
+            this.slot = slot;
+        }
+    }
+
+    private final Globals globals;
+    // innermost scope last, empty at the top level where variables are global
+    private final List<Map<String, Local>> scopes = new ArrayList<>();
+    // subexpressions left to resolve, pushed by the expression visitor methods
+    private final Deque<Expr> pending = new ArrayDeque<>();
+
+    Resolver(Globals globals) {
+        this.globals = globals;
+    }
+
+    void resolve(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    private void resolve(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void resolve(Expr expr) {
+        push(expr);
+        while (!pending.isEmpty()) {
+            pending.pop().accept(this);
+        }
+    }
+
+    // literals have nothing to resolve, most operands are literals
+    private void push(Expr expr) {
+        if (!(expr instanceof Expr.Literal)) {
+            pending.push(expr);
+        }
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        int slots = 0;
+        for (Stmt statement : stmt.statements) {
+            if (statement instanceof Stmt.Var) {
+                slots++;
+            }
+        }
+        stmt.slots = slots;
+
+        if (slots == 0) {
+            resolve(stmt.statements);
+            return null;
+        }
+
+        scopes.add(new HashMap<>());
+        try {
+            resolve(stmt.statements);
+        } finally {
+            scopes.remove(scopes.size() - 1);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (scopes.isEmpty()) {
+            // a global initializer may use the variable, it is undefined at runtime
+            // unless an earlier declaration defined it
+            if (stmt.initializer != null) {
+                resolve(stmt.initializer);
+            }
+            stmt.depth = -1;
+            stmt.slot = globals.slot(stmt.name.lexeme);
+            return null;
+        }
+
+        Map<String, Local> scope = scopes.get(scopes.size() - 1);
+        if (scope.containsKey(stmt.name.lexeme)) {
+            Lox.error(stmt.name, "Already a variable with this name in this scope.");
+        }
+        Local local = new Local(scope.size());
+        scope.put(stmt.name.lexeme, local);
+        if (stmt.initializer != null) {
+            resolve(stmt.initializer);
+        }
+        local.defined = true;
+
+        stmt.depth = 0;
+        stmt.slot = local.slot;
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        push(expr.value);
+        expr.depth = depthOf(expr.name);
+        expr.slot = expr.depth < 0 ? globals.slot(expr.name.lexeme) : local(expr.name, expr.depth).slot;
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        expr.depth = depthOf(expr.name);
+        if (expr.depth < 0) {
+            expr.slot = globals.slot(expr.name.lexeme);
+            return null;
+        }
+
+        Local local = local(expr.name, expr.depth);
+        if (!local.defined) {
+            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+        }
+        expr.slot = local.slot;
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        // pushed in reverse so that they are resolved (and errors reported) in order
+        push(expr.orElse);
+        push(expr.ifTrue);
+        push(expr.cond);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        push(expr.right);
+        push(expr.left);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        push(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        push(expr.right);
+        return null;
+    }
+
+    // the number of scopes between the innermost one and the one that declares
+    // name, -1 if no scope does i.e. name is a global
+    private int depthOf(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            if (scopes.get(i).containsKey(name.lexeme)) {
+                return scopes.size() - 1 - i;
+            }
+        }
+        return -1;
+    }
+
+    private Local local(Token name, int depth) {
+        return scopes.get(scopes.size() - 1 - depth).get(name.lexeme);
+    }
+}
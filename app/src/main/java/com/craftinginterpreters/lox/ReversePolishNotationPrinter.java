@@ -1,33 +1,115 @@
 package com.craftinginterpreters.lox;
 
-public class ReversePolishNotationPrinter implements Expr.Visitor<String> {
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Prints an expression in Reverse Polish Notation e.g. (1 + 2) * (4 - 3) is
+ * 1 2 + 4 3 - *. A ternary prints its three operands followed by ?: so
+ * a ? b : c is a b c ?:
+ *
+ * Like AstPrinter, the output is streamed into an Appendable and the tree is
+ * walked with an explicit stack.
+ */
+public class ReversePolishNotationPrinter implements Expr.Visitor<Void> {
+    // what is left to print, either an Expr or a String to print as is
+    private final Deque<Object> pending = new ArrayDeque<>();
+    private Appendable out;
+
     String print(Expr expr) {
-        return expr.accept(this); // dynamic dispatch on type of expr
+        StringBuilder builder = new StringBuilder();
+        try {
+            print(expr, builder);
+        } catch (IOException e) {
+            throw new AssertionError(e); // StringBuilder does not throw
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Same as print(Expr) but appends the output to out.
+     *
+     * @throws IOException if out does
+     */
+    void print(Expr expr, Appendable out) throws IOException {
+        this.out = out;
+        pending.push(expr);
+        try {
+            while (!pending.isEmpty()) {
+                Object next = pending.pop();
+                if (next instanceof Expr) {
+                    ((Expr) next).accept(this); // dynamic dispatch on type of expr
+                } else {
+                    append((String) next);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pending.clear();
+            this.out = null;
+        }
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        return postfix("?:", expr.cond, expr.ifTrue, expr.orElse);
     }
 
     @Override
-    public String visitTernaryExpr(Expr.Ternary expr) {
-        return new String("Implement me!");
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        return postfix(expr.operator.lexeme, expr.left, expr.right);
     }
 
     @Override
-    public String visitBinaryExpr(Expr.Binary expr) {
-        return this.print(expr.left) + " " + this.print(expr.right) + " " + expr.operator.lexeme;
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        pending.push(expr.expression);
+        return null;
     }
 
     @Override
-    public String visitGroupingExpr(Expr.Grouping expr) {
-        return this.print(expr.expression);
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        return postfix(expr.operator.lexeme, expr.right);
     }
 
     @Override
-    public String visitUnaryExpr(Expr.Unary expr) {
-        return this.print(expr.right) + " " + expr.operator.lexeme;
+    public Void visitVariableExpr(Expr.Variable expr) {
+        append(expr.name.lexeme);
+        return null;
     }
 
+    // a = 1 is a 1 =
     @Override
-    public String visitLiteralExpr(Expr.Literal expr) {
-        return expr.value.toString();
+    public Void visitAssignExpr(Expr.Assign expr) {
+        append(expr.name.lexeme);
+        append(" ");
+        return postfix("=", expr.value);
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        append(expr.value == null ? "nil" : expr.value.toString());
+        return null;
+    }
+
+    // pushes the operands, each followed by a space, and then the operator
+    private Void postfix(String operator, Expr... operands) {
+        pending.push(operator);
+        for (int i = operands.length - 1; i >= 0; i--) {
+            pending.push(" ");
+            pending.push(operands[i]);
+        }
+        return null;
+    }
+
+    private void append(String text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     // just for sanity check
@@ -1,10 +1,15 @@
 package com.craftinginterpreters.lox;
 
+/**
+ * A runtime error in the Lox program. These are control flow rather than bugs
+ * in the interpreter, so they don't capture a Java stack trace (which would be
+ * the most expensive part of raising them).
+ */
 class RuntimeError extends RuntimeException {
-    final Token token;
+    final Token token; // null if there is none, see BudgetExceededError
 
     RuntimeError(Token token, String message) {
-        super(message);
+        super(message, null, false, false);
         this.token = token;
     }
 }
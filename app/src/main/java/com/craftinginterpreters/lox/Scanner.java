@@ -1,50 +1,92 @@
 package com.craftinginterpreters.lox;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 class Scanner {
-  private final String source;
+  // sources shorter than this are scanned a char at a time, e.g. REPL lines
+  private static final int WORD_AT_A_TIME_LENGTH = 64;
+  // words with the character in every byte, for Swar.equal. Constants, so that
+  // loading Scanner doesn't initialize Swar (and its VarHandle) for short sources
+  private static final long SPACES = Swar.ONES * ' ';
+  private static final long TABS = Swar.ONES * '\t';
+  private static final long RETURNS = Swar.ONES * '\r';
+  private static final long NEWLINES = Swar.ONES * '\n';
+  private static final long QUOTES = Swar.ONES * '"';
+  private static final long SLASHES = Swar.ONES * '/';
+  private static final long STARS = Swar.ONES * '*';
+
+  private String source;
+  // the source one byte per char for skipping a word at a time, kept for the
+  // next source after a reset
+  private Swar.Window window;
+  // false if the source is too short for the window
+  private boolean wordAtATime;
   private final List<Token> tokens = new ArrayList<>();
-  private static final Map<String, TokenType> keywords;
-
-  static {
-    keywords = new HashMap<>();
-    keywords.put("and", TokenType.AND);
-    keywords.put("class", TokenType.CLASS);
-    keywords.put("else", TokenType.ELSE);
-    keywords.put("false", TokenType.FALSE);
-    keywords.put("for", TokenType.FOR);
-    keywords.put("fun", TokenType.FUN);
-    keywords.put("if", TokenType.IF);
-    keywords.put("nil", TokenType.NIL);
-    keywords.put("or", TokenType.OR);
-    keywords.put("print", TokenType.PRINT);
-    keywords.put("return", TokenType.RETURN);
-    keywords.put("super", TokenType.SUPER);
-    keywords.put("this", TokenType.THIS);
-    keywords.put("true", TokenType.TRUE);
-    keywords.put("var", TokenType.VAR);
-    keywords.put("while", TokenType.WHILE);
-  }
-
   private int start = 0; // points to start of current lexeme
   private int current = 0; // current character under consideration
   private int line = 1;
+  private int firstLine = 1;
+  private LineMap lineMap = null;
+  // the source ended inside a string or a comment
+  private boolean unterminated = false;
 
   Scanner(String source) {
     this.source = source;
   }
 
+  /**
+   * Prepares the scanner for scanning a new source, so that one scanner can be
+   * reused for many small inputs. The list returned by the previous scanTokens
+   * call is reused too, so callers must be done with it.
+   * 
+   * @param line the line number of the first line of source
+   */
+  void reset(String source, int line) {
+    this.source = source;
+    this.tokens.clear();
+    this.start = 0;
+    this.current = 0;
+    this.line = line;
+    this.firstLine = line;
+    this.lineMap = null;
+    this.unterminated = false;
+  }
+
+  /**
+   * @return the line/column map of the source being scanned. It is cheap to
+   *         call since the map only does any work when it is first used.
+   */
+  LineMap lineMap() {
+    if (lineMap == null) {
+      lineMap = new LineMap(source, firstLine);
+    }
+    return lineMap;
+  }
+
+  /**
+   * @return true if the last scanTokens ended inside a string or a comment,
+   *         i.e. more of the source might have closed it
+   */
+  boolean isUnterminated() {
+    return unterminated;
+  }
+
   List<Token> scanTokens() {
+    wordAtATime = source.length() >= WORD_AT_A_TIME_LENGTH;
+    if (wordAtATime) {
+      int size = Math.min(source.length(), Swar.Window.SIZE);
+      if (window == null || window.size() < size) {
+        window = new Swar.Window(size);
+      }
+      window.reset(source);
+    }
     while (!isAtEnd()) {
       start = current;
       scanToken();
     }
 
-    tokens.add(new Token(TokenType.EOF, "", null, line));
+    tokens.add(new Token(TokenType.EOF, "", null, line, source.length()));
     return tokens;
   }
 
@@ -117,22 +159,25 @@ class Scanner {
 
       case '/':
         if (match('/')) {
-          while (peek() != '\n' && !isAtEnd()) { // is comment, consume entire line
-            advance();
-          }
+          // is comment, consume entire line. indexOf is vectorized by the JVM
+          int newline = source.indexOf('\n', current);
+          current = newline < 0 ? source.length() : newline;
         } else if (match('*')) {
           multilineComment();
         } else {
           addToken(TokenType.SLASH);
         }
+        break;
 
       case ' ':
       case '\r':
       case '\t':
+        skipWhitespace();
         break;
 
       case '\n':
         line++;
+        skipWhitespace();
         break;
 
       case '"':
@@ -150,7 +195,15 @@ class Scanner {
           // 'chid' which would not make sense. This follows the maximum munch princple.
           identifier();
         } else {
-          Lox.error(line, "Unexpected character.");
+          // a run of them is one error, e.g. in a binary file
+          while (isUnexpected(peek()) && !isAtEnd()) {
+            advance();
+          }
+          int length = current - start;
+          Lox.error(line, start, length, length == 1 ? "Unexpected character." : "Unexpected characters.");
+          if (Lox.tooManyErrors()) {
+            current = source.length(); // no point in scanning the rest
+          }
           break;
         }
     }
@@ -165,8 +218,7 @@ class Scanner {
     }
 
     String text = source.substring(start, current);
-    // if in map, the current lexeme is a keyword
-    TokenType type = keywords.get(text);
+    TokenType type = keyword(text);
     if (type == null) {
       type = TokenType.IDENTIFIER;
     }
@@ -175,6 +227,50 @@ class Scanner {
     addToken(type);
   }
 
+  /**
+   * @return the type of the keyword 'text' or null if it is not a keyword.
+   *         This is a switch rather than a static map so that there is nothing
+   *         to initialize when the scanner is first loaded.
+   */
+  private static TokenType keyword(String text) {
+    switch (text) {
+      case "and":
+        return TokenType.AND;
+      case "class":
+        return TokenType.CLASS;
+      case "else":
+        return TokenType.ELSE;
+      case "false":
+        return TokenType.FALSE;
+      case "for":
+        return TokenType.FOR;
+      case "fun":
+        return TokenType.FUN;
+      case "if":
+        return TokenType.IF;
+      case "nil":
+        return TokenType.NIL;
+      case "or":
+        return TokenType.OR;
+      case "print":
+        return TokenType.PRINT;
+      case "return":
+        return TokenType.RETURN;
+      case "super":
+        return TokenType.SUPER;
+      case "this":
+        return TokenType.THIS;
+      case "true":
+        return TokenType.TRUE;
+      case "var":
+        return TokenType.VAR;
+      case "while":
+        return TokenType.WHILE;
+      default:
+        return null;
+    }
+  }
+
   /**
    * Consumes a number from the source and adds a token to the list.
    * Lox only supports floating point numbers.
@@ -202,6 +298,7 @@ class Scanner {
    * @implNote Lox supports multi-line strings but no escape characters.
    */
   private void string() {
+    skipUntil(QUOTES, QUOTES);
     while (peek() != '"' && !isAtEnd()) {
       if (peek() == '\n') {
         line++;
@@ -211,7 +308,8 @@ class Scanner {
 
     // could have broken out of loop for two reasons, 1. end of input
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated string. Did you perhaps miss the closing '\"' ?");
+      unterminated = true;
+      Lox.error(line, start, "Unterminated string. Did you perhaps miss the closing '\"' ?");
       return;
     }
 
@@ -225,6 +323,12 @@ class Scanner {
   private void multilineComment() {
     int commentTokenPairs = 1;
     while (!isAtEnd()) {
+      // only a '/' or a '*' can start or end a comment
+      skipUntil(SLASHES, STARS);
+      if (isAtEnd()) {
+        break;
+      }
+
       if (peek() == '/' && peekNext() == '*') {
         commentTokenPairs++;
       } else if (peek() == '*' && peekNext() == '/') {
@@ -243,7 +347,8 @@ class Scanner {
     }
 
     if (isAtEnd()) {
-      Lox.error(line, "Unterminated multi-line comment. Did you perhaps miss the closing '*/' ?");
+      unterminated = true;
+      Lox.error(line, start, "Unterminated multi-line comment. Did you perhaps miss the closing '*/' ?");
       return;
     }
 
@@ -254,6 +359,73 @@ class Scanner {
     return;
   }
 
+  /**
+   * Skips the whitespace after the whitespace character just scanned a word at
+   * a time, counting newlines. Stops at the first other character, or when less
+   * than a word is left (see Swar.Window.fill) for scanToken to go through as
+   * usual.
+   */
+  private void skipWhitespace() {
+    // a single space between tokens is the common case, not worth a word
+    if (!wordAtATime || !isWhitespace(peek())) {
+      return;
+    }
+
+    int index = current;
+    int lines = 0;
+    while (window.fill(index)) {
+      byte[] bytes = window.bytes;
+      int offset = index - window.start;
+      for (int last = window.end - window.start - Swar.WORD; offset <= last; offset += Swar.WORD) {
+        long word = Swar.load(bytes, offset);
+        long newlines = Swar.equal(word, NEWLINES);
+        long whitespace = newlines | Swar.equal(word, SPACES) | Swar.equal(word, TABS) | Swar.equal(word, RETURNS);
+        long other = ~whitespace & Swar.HIGH_BITS;
+        if (other != 0) {
+          line += lines + Long.bitCount(newlines & Swar.before(other));
+          current = window.start + offset + Swar.first(other);
+          return;
+        }
+        lines += Long.bitCount(newlines);
+      }
+      index = window.start + offset;
+    }
+    current = index;
+    line += lines;
+  }
+
+  /**
+   * Skips to the next character in the words a or b (see SPACES) a word
+   * at a time, counting newlines. Stops there, or when less than a word is left
+   * (see Swar.Window.fill) for the caller to go through a char at a time.
+   */
+  private void skipUntil(long a, long b) {
+    if (!wordAtATime) {
+      return;
+    }
+
+    int index = current;
+    int lines = 0;
+    while (window.fill(index)) {
+      byte[] bytes = window.bytes;
+      int offset = index - window.start;
+      for (int last = window.end - window.start - Swar.WORD; offset <= last; offset += Swar.WORD) {
+        long word = Swar.load(bytes, offset);
+        long newlines = Swar.equal(word, NEWLINES);
+        long found = Swar.equal(word, a) | Swar.equal(word, b);
+        if (found != 0) {
+          line += lines + Long.bitCount(newlines & Swar.before(found));
+          current = window.start + offset + Swar.first(found);
+          return;
+        }
+        lines += Long.bitCount(newlines);
+      }
+      index = window.start + offset;
+    }
+    current = index;
+    line += lines;
+  }
+
   /**
    * Matches the next unconsumed character with 'expected' and if it matches,
    * consumes it by advancing 'current'.
@@ -311,6 +483,17 @@ class Scanner {
     return c >= '0' && c <= '9';
   }
 
+  /**
+   * @return true if c can't start a token, or be skipped as whitespace
+   */
+  private boolean isUnexpected(char c) {
+    return !isAlphaNumeric(c) && !isWhitespace(c) && "(){},.-+;*?:!=<>/\"".indexOf(c) < 0;
+  }
+
+  private boolean isWhitespace(char c) {
+    return c == ' ' || c == '\r' || c == '\t' || c == '\n';
+  }
+
   private boolean isAtEnd() {
     return current >= source.length();
   }
@@ -340,6 +523,6 @@ class Scanner {
 
   private void addToken(TokenType type, Object literal) {
     String tokenText = source.substring(start, current);
-    tokens.add(new Token(type, tokenText, literal, line));
+    tokens.add(new Token(type, tokenText, literal, line, start));
   }
 }
@@ -0,0 +1,595 @@
+package com.craftinginterpreters.lox;
+
+/**
+ * Turns an Expr into a tree of Nodes that evaluate it, type checking it on the
+ * way (see TypeChecker). Where the operand types are proven, the nodes skip the checks the
+ * Interpreter makes on every evaluation and work on unboxed doubles and
+ * booleans, e.g. 1 + 2 * 3 becomes Add(Constant, Multiply(Constant,
+ * Constant)) which never calls instanceof. Anything else falls back to the
+ * checked operations of the Interpreter, so the result (including any runtime
+ * error) is always the same as the Interpreter's.
+ *
+ * Used by CompiledExpr, whose expressions have no variables, and with
+ * -Djlox.typeCheck=true by the Interpreter for the expressions of statements
+ * (see Interpreter.specialize). There variables are read and assigned through
+ * the Interpreter, and have UNKNOWN types, so the operators using them are
+ * checked.
+ * 
+ * Nodes have no state so the same tree can be evaluated by many threads at
+ * once, unless it uses the variables of an Interpreter.
+ * 
+ * Example Usage:
+ * 
+ * <pre>
+ * {@code
+ *      TypeChecker checker = new TypeChecker(null);
+ *      Specializer.Node node = Specializer.specialize(expression, checker);
+ *      checker.errors(); // the same as after checker.check(expression)
+ *      Object value = node.evaluate();
+ * }
+ * </pre>
+ */
+class Specializer implements Expr.Visitor<Specializer.Node> {
+    private final TypeChecker checker;
+    // holds the variables, null if there are none i.e. every variable is undefined
+    private final Interpreter interpreter;
+    // the type of the expression specialized last
+    private LoxType type;
+
+    private Specializer(TypeChecker checker, Interpreter interpreter) {
+        this.checker = checker;
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * @param checker gets the type errors of expr
+     */
+    static Node specialize(Expr expr, TypeChecker checker) {
+        return expr.accept(new Specializer(checker, null));
+    }
+
+    /**
+     * Same as specialize(Expr, TypeChecker) for a resolved expr, whose
+     * variables are those of interpreter.
+     */
+    static Node specialize(Expr expr, TypeChecker checker, Interpreter interpreter) {
+        return expr.accept(new Specializer(checker, interpreter));
+    }
+
+    /**
+     * Evaluates node once and returns a node that gives the same value, or
+     * throws the same error, without evaluating anything. Only valid for
+     * expressions that are not resolved (see CompiledExpr), since those always
+     * evaluate the same way.
+     */
+    static Node fold(Node node) {
+        try {
+            return new Constant(node.evaluate());
+        } catch (RuntimeError error) {
+            return new Failure(error.token, error.getMessage());
+        }
+    }
+
+    abstract static class Node {
+        abstract Object evaluate();
+
+        // only called on nodes whose type is proven to be NUMBER
+        double evaluateNumber() {
+            return (double) evaluate();
+        }
+
+        // only called on nodes whose type is proven to be BOOLEAN
+        boolean evaluateBoolean() {
+            return (boolean) evaluate();
+        }
+    }
+
+    @Override
+    public Node visitTernaryExpr(Expr.Ternary expr) {
+        Node cond = expr.cond.accept(this);
+        LoxType condType = type;
+        Node ifTrue = expr.ifTrue.accept(this);
+        LoxType ifTrueType = type;
+        Node orElse = expr.orElse.accept(this);
+        type = TypeChecker.ternary(ifTrueType, type);
+        if (condType == LoxType.BOOLEAN) {
+            return new BooleanTernary(cond, ifTrue, orElse);
+        }
+        return new Ternary(cond, ifTrue, orElse);
+    }
+
+    @Override
+    public Node visitBinaryExpr(Expr.Binary expr) {
+        Node left = expr.left.accept(this);
+        LoxType leftType = type;
+        Node right = expr.right.accept(this);
+        LoxType rightType = type;
+        type = checker.binary(expr.operator, leftType, rightType);
+        boolean numbers = leftType == LoxType.NUMBER && rightType == LoxType.NUMBER;
+
+        switch (expr.operator.type) {
+            case GREATER:
+                return numbers ? new Greater(left, right) : new Binary(expr.operator, left, right);
+            case GREATER_EQUAL:
+                return numbers ? new GreaterEqual(left, right) : new Binary(expr.operator, left, right);
+            case LESS:
+                return numbers ? new Less(left, right) : new Binary(expr.operator, left, right);
+            case LESS_EQUAL:
+                return numbers ? new LessEqual(left, right) : new Binary(expr.operator, left, right);
+            case MINUS:
+                return numbers ? new Subtract(left, right) : new Binary(expr.operator, left, right);
+            case STAR:
+                return numbers ? new Multiply(left, right) : new Binary(expr.operator, left, right);
+            case SLASH:
+                return numbers ? new Divide(expr.operator, left, right) : new Binary(expr.operator, left, right);
+            case PLUS:
+                if (numbers) {
+                    return new Add(left, right);
+                }
+                if ((leftType == LoxType.STRING || rightType == LoxType.STRING) && leftType.isKnown()
+                        && rightType.isKnown()) {
+                    return new Concatenate(left, leftType == LoxType.STRING, right, rightType == LoxType.STRING);
+                }
+                return new Binary(expr.operator, left, right);
+            case EQUAL_EQUAL:
+                return numbers ? new NumberEqual(left, right, false) : new Binary(expr.operator, left, right);
+            case BANG_EQUAL:
+                return numbers ? new NumberEqual(left, right, true) : new Binary(expr.operator, left, right);
+            case COMMA:
+                return new Comma(left, right);
+        }
+
+        return new Binary(expr.operator, left, right);
+    }
+
+    @Override
+    public Node visitGroupingExpr(Expr.Grouping expr) {
+        // a grouping only matters to the parser
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Node visitLiteralExpr(Expr.Literal expr) {
+        type = LoxType.of(expr.value);
+        return new Constant(expr.value);
+    }
+
+    @Override
+    public Node visitVariableExpr(Expr.Variable expr) {
+        type = LoxType.UNKNOWN;
+        if (interpreter == null) {
+            return new Undefined(expr.name, null);
+        }
+        return new Variable(interpreter, expr);
+    }
+
+    @Override
+    public Node visitAssignExpr(Expr.Assign expr) {
+        if (interpreter == null) {
+            return new Undefined(expr.name, expr.value.accept(this));
+        }
+        return new Assign(interpreter, expr, expr.value.accept(this));
+    }
+
+    @Override
+    public Node visitUnaryExpr(Expr.Unary expr) {
+        Node right = expr.right.accept(this);
+        LoxType rightType = type;
+        type = checker.unary(expr.operator, rightType);
+
+        switch (expr.operator.type) {
+            case MINUS:
+                if (rightType == LoxType.NUMBER) {
+                    return new Negate(right);
+                }
+                break;
+            case BANG:
+                if (rightType == LoxType.BOOLEAN) {
+                    return new Not(right);
+                }
+                break;
+        }
+        return new Unary(expr.operator, right);
+    }
+
+    private static class Constant extends Node {
+        private final Object value;
+        private final double number; // unboxed once rather than on every evaluation
+
+        Constant(Object value) {
+            this.value = value;
+            this.number = value instanceof Double ? (double) value : 0.0;
+        }
+
+        @Override
+        Object evaluate() {
+            return value;
+        }
+
+        @Override
+        double evaluateNumber() {
+            return number;
+        }
+    }
+
+    // a folded expression that fails, see fold. Every evaluation gets its own
+    // error like with the other nodes
+    private static class Failure extends Node {
+        private final Token token;
+        private final String message;
+
+        Failure(Token token, String message) {
+            this.token = token;
+            this.message = message;
+        }
+
+        @Override
+        Object evaluate() {
+            throw new RuntimeError(token, message);
+        }
+    }
+
+    // the fallbacks, they check the operand types like the Interpreter does
+
+    private static class Binary extends Node {
+        private final Token operator;
+        private final Node left;
+        private final Node right;
+
+        Binary(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            Object leftValue = left.evaluate();
+            Object rightValue = right.evaluate();
+            return Interpreter.binary(operator, leftValue, rightValue, null);
+        }
+    }
+
+    private static class Unary extends Node {
+        private final Token operator;
+        private final Node right;
+
+        Unary(Token operator, Node right) {
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            return Interpreter.unary(operator, right.evaluate());
+        }
+    }
+
+    // a compiled expression is never resolved and can't declare anything, so
+    // every variable in it is undefined. An assignment evaluates its value first
+    private static class Undefined extends Node {
+        private final Token name;
+        private final Node value; // null for a read
+
+        Undefined(Token name, Node value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object evaluate() {
+            if (value != null) {
+                value.evaluate();
+            }
+            throw Globals.undefined(name);
+        }
+    }
+
+    private static class Variable extends Node {
+        private final Interpreter interpreter;
+        private final Expr.Variable expr;
+
+        Variable(Interpreter interpreter, Expr.Variable expr) {
+            this.interpreter = interpreter;
+            this.expr = expr;
+        }
+
+        @Override
+        Object evaluate() {
+            return interpreter.lookUp(expr);
+        }
+    }
+
+    private static class Assign extends Node {
+        private final Interpreter interpreter;
+        private final Expr.Assign expr;
+        private final Node value;
+
+        Assign(Interpreter interpreter, Expr.Assign expr, Node value) {
+            this.interpreter = interpreter;
+            this.expr = expr;
+            this.value = value;
+        }
+
+        @Override
+        Object evaluate() {
+            Object value = this.value.evaluate();
+            interpreter.assign(expr, value);
+            return value;
+        }
+    }
+
+    private static class Ternary extends Node {
+        final Node cond;
+        final Node ifTrue;
+        final Node orElse;
+
+        Ternary(Node cond, Node ifTrue, Node orElse) {
+            this.cond = cond;
+            this.ifTrue = ifTrue;
+            this.orElse = orElse;
+        }
+
+        @Override
+        Object evaluate() {
+            // like the Interpreter, all three are evaluated
+            Object condition = cond.evaluate();
+            Object ifTrueValue = ifTrue.evaluate();
+            Object orElseValue = orElse.evaluate();
+            return Interpreter.isTruthy(condition) ? ifTrueValue : orElseValue;
+        }
+
+        @Override
+        double evaluateNumber() {
+            // both branches are numbers if this one is
+            boolean condition = Interpreter.isTruthy(cond.evaluate());
+            double ifTrueValue = ifTrue.evaluateNumber();
+            double orElseValue = orElse.evaluateNumber();
+            return condition ? ifTrueValue : orElseValue;
+        }
+    }
+
+    private static class BooleanTernary extends Ternary {
+        BooleanTernary(Node cond, Node ifTrue, Node orElse) {
+            super(cond, ifTrue, orElse);
+        }
+
+        @Override
+        Object evaluate() {
+            boolean condition = cond.evaluateBoolean();
+            Object ifTrueValue = ifTrue.evaluate();
+            Object orElseValue = orElse.evaluate();
+            return condition ? ifTrueValue : orElseValue;
+        }
+
+        @Override
+        double evaluateNumber() {
+            boolean condition = cond.evaluateBoolean();
+            double ifTrueValue = ifTrue.evaluateNumber();
+            double orElseValue = orElse.evaluateNumber();
+            return condition ? ifTrueValue : orElseValue;
+        }
+    }
+
+    private static class Comma extends Node {
+        private final Node left;
+        private final Node right;
+
+        Comma(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            left.evaluate();
+            right.evaluate();
+            return null;
+        }
+    }
+
+    // the specialized operations, their operand types have been proven
+
+    private abstract static class NumberOperation extends Node {
+        final Node left;
+        final Node right;
+
+        NumberOperation(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            return evaluateNumber();
+        }
+    }
+
+    private static class Add extends NumberOperation {
+        Add(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        double evaluateNumber() {
+            return left.evaluateNumber() + right.evaluateNumber();
+        }
+    }
+
+    private static class Subtract extends NumberOperation {
+        Subtract(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        double evaluateNumber() {
+            return left.evaluateNumber() - right.evaluateNumber();
+        }
+    }
+
+    private static class Multiply extends NumberOperation {
+        Multiply(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        double evaluateNumber() {
+            return left.evaluateNumber() * right.evaluateNumber();
+        }
+    }
+
+    private static class Divide extends NumberOperation {
+        private final Token operator;
+
+        Divide(Token operator, Node left, Node right) {
+            super(left, right);
+            this.operator = operator;
+        }
+
+        @Override
+        double evaluateNumber() {
+            double dividend = left.evaluateNumber();
+            double divisor = right.evaluateNumber();
+            if (divisor == 0.0) {
+                throw new RuntimeError(operator, "Division by zero.");
+            }
+            return dividend / divisor;
+        }
+    }
+
+    private static class Negate extends Node {
+        private final Node right;
+
+        Negate(Node right) {
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            return evaluateNumber();
+        }
+
+        @Override
+        double evaluateNumber() {
+            return -right.evaluateNumber();
+        }
+    }
+
+    private abstract static class Comparison extends Node {
+        final Node left;
+        final Node right;
+
+        Comparison(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            return evaluateBoolean();
+        }
+    }
+
+    private static class Greater extends Comparison {
+        Greater(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        boolean evaluateBoolean() {
+            return left.evaluateNumber() > right.evaluateNumber();
+        }
+    }
+
+    private static class GreaterEqual extends Comparison {
+        GreaterEqual(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        boolean evaluateBoolean() {
+            return left.evaluateNumber() >= right.evaluateNumber();
+        }
+    }
+
+    private static class Less extends Comparison {
+        Less(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        boolean evaluateBoolean() {
+            return left.evaluateNumber() < right.evaluateNumber();
+        }
+    }
+
+    private static class LessEqual extends Comparison {
+        LessEqual(Node left, Node right) {
+            super(left, right);
+        }
+
+        @Override
+        boolean evaluateBoolean() {
+            return left.evaluateNumber() <= right.evaluateNumber();
+        }
+    }
+
+    private static class NumberEqual extends Comparison {
+        private final boolean negated;
+
+        NumberEqual(Node left, Node right, boolean negated) {
+            super(left, right);
+            this.negated = negated;
+        }
+
+        @Override
+        boolean evaluateBoolean() {
+            // Double.equals rather than == i.e. NaN == NaN and 0 != -0, same as the
+            // Interpreter
+            long leftBits = Double.doubleToLongBits(left.evaluateNumber());
+            long rightBits = Double.doubleToLongBits(right.evaluateNumber());
+            return (leftBits == rightBits) != negated;
+        }
+    }
+
+    private static class Not extends Node {
+        private final Node right;
+
+        Not(Node right) {
+            this.right = right;
+        }
+
+        @Override
+        Object evaluate() {
+            return evaluateBoolean();
+        }
+
+        @Override
+        boolean evaluateBoolean() {
+            return !right.evaluateBoolean();
+        }
+    }
+
+    private static class Concatenate extends Node {
+        private final Node left;
+        private final boolean leftIsString;
+        private final Node right;
+        private final boolean rightIsString;
+
+        Concatenate(Node left, boolean leftIsString, Node right, boolean rightIsString) {
+            this.left = left;
+            this.leftIsString = leftIsString;
+            this.right = right;
+            this.rightIsString = rightIsString;
+        }
+
+        @Override
+        Object evaluate() {
+            Object leftValue = left.evaluate();
+            Object rightValue = right.evaluate();
+            String leftString = leftIsString ? (String) leftValue : Interpreter.stringify(leftValue);
+            String rightString = rightIsString ? (String) rightValue : Interpreter.stringify(rightValue);
+            return leftString + rightString;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates an expression like the Interpreter does, but with a work stack and
+ * a value stack of its own instead of recursing through accept/visit*. A chain
+ * of a few hundred thousand operators like 1 + 1 + 1 + ..., which the Parser
+ * builds with a loop, overflows the thread stack of the Interpreter but takes
+ * no more thread stack here than 1 + 1.
+ *
+ * Each node is visited twice: on the way down (the visitor methods of this
+ * class), when it pushes itself to be finished and then its operands, and
+ * after its operands have left their values on the value stack (finish), when
+ * it replaces them by its own value. Operands are evaluated in the same order
+ * and errors are raised by the same code as in the Interpreter, so they name
+ * the same Token.
+ *
+ * Literal operands are not pushed: a left one is pushed as a value straight
+ * away and a right one is read when its operator is finished, which is when the
+ * Interpreter would have evaluated them too.
+ *
+ * Used for top level expressions when -Djlox.stackSafe=true is set. Variables
+ * live in the Interpreter it belongs to, which also sets the budget.
+ */
+class StackEvaluator implements Expr.Visitor<Void> {
+    private static final int INITIAL_CAPACITY = 64;
+    // after a deeper expression the stacks are shrunk again, instead of keeping
+    // megabytes around for the rest of the session
+    private static final int MAX_RETAINED_CAPACITY = 1 << 14;
+
+    private final Interpreter interpreter;
+
+    // nodes to visit, or to finish if the same index in finishing is set
+    private Expr[] work = new Expr[INITIAL_CAPACITY];
+    private boolean[] finishing = new boolean[INITIAL_CAPACITY];
+    private int workSize = 0;
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int valueSize = 0;
+
+    StackEvaluator(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * @return the value of expr, see Interpreter.evaluate(Expr)
+     * @throws RuntimeError like the Interpreter would
+     */
+    Object evaluate(Expr expr) {
+        push(expr, false);
+        try {
+            while (workSize > 0) {
+                workSize--;
+                Expr node = work[workSize];
+                work[workSize] = null;
+                if (finishing[workSize]) {
+                    node.accept(finish);
+                } else {
+                    if (interpreter.budget != null) {
+                        interpreter.budget.step(node);
+                    }
+                    node.accept(this);
+                }
+            }
+            return values[0];
+        } finally {
+            clear();
+        }
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.TERNARY.increment();
+        }
+
+        // pushed in reverse so that they are evaluated in order
+        push(expr, true);
+        push(expr.orElse, false);
+        push(expr.ifTrue, false);
+        push(expr.cond, false);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.BINARY.increment();
+        }
+
+        push(expr, true);
+        if (!(expr.right instanceof Expr.Literal)) {
+            push(expr.right, false);
+        }
+        operand(expr.left);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.GROUPING.increment();
+        }
+
+        // its value is that of the expression, nothing to finish
+        push(expr.expression, false);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.LITERAL.increment();
+        }
+
+        pushValue(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.VARIABLE.increment();
+        }
+
+        pushValue(interpreter.lookUp(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.ASSIGN.increment();
+        }
+
+        push(expr, true);
+        push(expr.value, false);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        if (EvalCounters.ENABLED) {
+            EvalCounters.UNARY.increment();
+        }
+
+        if (expr.right instanceof Expr.Literal) {
+            pushValue(Interpreter.unary(expr.operator, literal((Expr.Literal) expr.right)));
+        } else {
+            push(expr, true);
+            push(expr.right, false);
+        }
+        return null;
+    }
+
+    // the way back up: the operands' values are on top of the value stack, last
+    // operand on top
+    private final Expr.Visitor<Void> finish = new Expr.Visitor<Void>() {
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            Object orElse = popValue();
+            Object ifTrue = popValue();
+            Object condition = popValue();
+            pushValue(Interpreter.isTruthy(condition) ? ifTrue : orElse);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            Object right = expr.right instanceof Expr.Literal ? literal((Expr.Literal) expr.right) : popValue();
+            Object left = popValue();
+            pushValue(Interpreter.binary(expr.operator, left, right, interpreter.budget));
+            return null;
+        }
+
+        @Override
+        public Void visitAssignExpr(Expr.Assign expr) {
+            // the assigned value stays on the stack as the value of the assignment
+            interpreter.assign(expr, values[valueSize - 1]);
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            pushValue(Interpreter.unary(expr.operator, popValue()));
+            return null;
+        }
+
+        // never pushed to be finished
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            throw new IllegalStateException();
+        }
+    };
+
+    // the next operand to evaluate, a literal is evaluated right away
+    private void operand(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            pushValue(literal((Expr.Literal) expr));
+        } else {
+            push(expr, false);
+        }
+    }
+
+    // evaluates a literal that was not pushed
+    private Object literal(Expr.Literal expr) {
+        if (interpreter.budget != null) {
+            interpreter.budget.step(expr);
+        }
+        if (EvalCounters.ENABLED) {
+            EvalCounters.LITERAL.increment();
+        }
+        return expr.value;
+    }
+
+    private void push(Expr expr, boolean finish) {
+        if (workSize == work.length) {
+            work = Arrays.copyOf(work, 2 * workSize);
+            finishing = Arrays.copyOf(finishing, 2 * workSize);
+        }
+        work[workSize] = expr;
+        finishing[workSize] = finish;
+        workSize++;
+    }
+
+    private void pushValue(Object value) {
+        if (valueSize == values.length) {
+            values = Arrays.copyOf(values, 2 * valueSize);
+        }
+        values[valueSize++] = value;
+    }
+
+    private Object popValue() {
+        Object value = values[--valueSize];
+        values[valueSize] = null;
+        return value;
+    }
+
+    // drops what an error left behind and the references to the tree and values
+    private void clear() {
+        if (work.length > MAX_RETAINED_CAPACITY) {
+            work = new Expr[INITIAL_CAPACITY];
+            finishing = new boolean[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(work, 0, workSize, null);
+        }
+        if (values.length > MAX_RETAINED_CAPACITY) {
+            values = new Object[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(values, 0, valueSize, null);
+        }
+        workSize = 0;
+        valueSize = 0;
+    }
+}
@@ -0,0 +1,337 @@
+package com.craftinginterpreters.lox;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs piped (non-interactive) input as fast as possible, a line at a time like
+ * the prompt: statements run as in a script, and an expression without a ';'
+ * is printed, so both a script and a file of one expression per line work.
+ * Unlike the prompt it does not print '> ', and:
+ *
+ * - input is read in large chunks and scanned and parsed on a separate thread,
+ * reusing one Scanner and Parser, while the calling thread resolves and runs
+ * the statements. A bounded queue between the two keeps the parser from running
+ * too far ahead.
+ *
+ * - a line that leaves a block, a string or a comment open is parsed together
+ * with the lines that follow until it is closed, so that blocks in scripts can
+ * span lines. The same goes for a line that ends in the middle of a statement
+ * or expression (its first syntax error is at the end), e.g. 'var x = 1 +'.
+ * A line that is a whole expression by itself is printed though, so '1 + 2'
+ * followed by a line '* 3;' is two lines, the second of them an error.
+ *
+ * - printed values go to a large buffer that is only flushed when the
+ * evaluator has caught up with the parser (and at the end), so a million lines
+ * of input don't mean a million writes.
+ *
+ * Errors are reported with the line number of the input line. Switching from
+ * results to errors or back flushes the other, so that they appear in input
+ * order when both go to the same place (2>&1). Like REPL lines, each parsed
+ * line (or block) counts its syntax errors towards -Djlox.maxErrors on its own,
+ * so a bad line never keeps later ones from running.
+ */
+class StreamRunner {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /**
+     * Parsed lines: either statements or the syntax (or type) errors they had.
+     */
+    private static class Parsed {
+        static final Parsed END = new Parsed(null, false, null, null, null);
+
+        final List<Stmt> statements;
+        // false if there are no variables, so nothing to resolve
+        final boolean hasVariables;
+        // see Interpreter.specialized, null unless -Djlox.typeCheck=true
+        final Map<Expr, Specializer.Node> specialized;
+        final List<Diagnostic> errors;
+        final LineMap source;
+
+        Parsed(List<Stmt> statements, boolean hasVariables, Map<Expr, Specializer.Node> specialized,
+                List<Diagnostic> errors, LineMap source) {
+            this.statements = statements;
+            this.hasVariables = hasVariables;
+            this.specialized = specialized;
+            this.errors = errors;
+            this.source = source;
+        }
+    }
+
+    private final InputStream input;
+    private final OutputStream output;
+    private final BlockingQueue<Parsed> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private volatile IOException readError = null;
+
+    /**
+     * @param output where printed values go, usually stdout. Errors go to
+     *               System.err like everywhere else
+     */
+    StreamRunner(InputStream input, OutputStream output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    void run(Interpreter interpreter) throws IOException {
+        Thread parser = new Thread(() -> parseLines(interpreter), "jlox-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        Charset charset = Charset.forName(System.getProperty("stdout.encoding", Charset.defaultCharset().name()));
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(output, charset), BUFFER_SIZE));
+        // resolving happens here rather than on the parser thread since it gives
+        // globals their slots, which the interpreter uses at the same time
+        Resolver resolver = new Resolver(interpreter.globals);
+        interpreter.output = out;
+        try {
+            for (;;) {
+                Parsed parsed = queue.poll();
+                if (parsed == null) {
+                    // caught up with the parser, this is a good time to let the output go
+                    out.flush();
+                    Lox.flushErrors();
+                    parsed = take();
+                }
+
+                if (parsed == Parsed.END) {
+                    break;
+                }
+
+                List<Diagnostic> errors = parsed.errors;
+                if (errors == null) {
+                    errors = parsed.hasVariables ? resolve(resolver, parsed) : Collections.emptyList();
+                }
+                if (!errors.isEmpty()) {
+                    // the results of earlier lines go first, stderr and stdout are often
+                    // the same terminal or file
+                    out.flush();
+                    Lox.resetErrorCount();
+                    for (Diagnostic error : errors) {
+                        Lox.printCollected(error);
+                    }
+                    continue;
+                }
+
+                // and the errors of earlier lines before what these print
+                Lox.flushErrors();
+                if (parsed.specialized != null) {
+                    interpreter.specialized = parsed.specialized;
+                }
+                try {
+                    interpreter.execute(parsed.statements);
+                } catch (RuntimeError error) {
+                    out.flush();
+                    Lox.runtimeError(error, parsed.source);
+                }
+            }
+        } finally {
+            interpreter.output = null;
+            out.flush();
+            Lox.flushErrors();
+        }
+
+        if (readError != null) {
+            throw readError;
+        }
+    }
+
+    // the errors the Resolver found, e.g. a variable declared twice in a block
+    private static List<Diagnostic> resolve(Resolver resolver, Parsed parsed) {
+        // it only reports errors about local variables, i.e. in blocks. Most lines
+        // have none and are not worth setting up collecting for
+        if (!hasBlock(parsed.statements)) {
+            resolver.resolve(parsed.statements);
+            return Collections.emptyList();
+        }
+
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        Lox.setSource(parsed.source);
+        try {
+            resolver.resolve(parsed.statements);
+        } finally {
+            Lox.setSource(null);
+            Lox.endCollectingErrors();
+        }
+        return errors;
+    }
+
+    private static boolean hasBlock(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Block) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs on the parser thread until the input is exhausted. interpreter is
+     * only used to specialize with -Djlox.typeCheck=true, see parse.
+     */
+    private void parseLines(Interpreter interpreter) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input), BUFFER_SIZE);
+        Scanner scanner = new Scanner("");
+        Parser parser = new Parser(new ArrayList<>());
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        try {
+            int lineNumber = 0;
+            // the lines of a block, string, comment or statement that is still open,
+            // and the number of the first one
+            StringBuilder open = new StringBuilder();
+            int firstLine = 1;
+            // what is open is a statement, which any line might finish
+            boolean inStatement = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (open.length() == 0) {
+                    firstLine = lineNumber;
+                    scanner.reset(line, lineNumber);
+                } else {
+                    open.append('\n').append(line);
+                    if (!inStatement && !mayClose(line)) {
+                        continue;
+                    }
+                    scanner.reset(open.toString(), firstLine);
+                }
+
+                List<Token> tokens = scanner.scanTokens();
+                inStatement = false;
+                if (isOpen(scanner, tokens, errors)) {
+                    if (open.length() == 0) {
+                        open.append(line);
+                    }
+                    errors.clear();
+                    continue;
+                }
+                if (!parse(scanner, parser, tokens, errors, interpreter, true)) {
+                    if (open.length() == 0) {
+                        open.append(line);
+                    }
+                    inStatement = true;
+                    continue;
+                }
+                open.setLength(0);
+            }
+
+            if (open.length() > 0) {
+                // the input ends inside it, which is an error now
+                scanner.reset(open.toString(), firstLine);
+                parse(scanner, parser, scanner.scanTokens(), errors, interpreter, false);
+            }
+        } catch (IOException error) {
+            readError = error;
+        } finally {
+            Lox.setSource(null);
+            Lox.endCollectingErrors();
+            put(Parsed.END);
+        }
+    }
+
+    /**
+     * Parses tokens and hands the statements (or the errors) to the other thread.
+     *
+     * @param mayContinue true if more lines may follow
+     * @return false if the tokens end in the middle of a statement and more lines
+     *         may follow, the statement is then left for them to finish
+     */
+    private boolean parse(Scanner scanner, Parser parser, List<Token> tokens, List<Diagnostic> errors,
+            Interpreter interpreter, boolean mayContinue) {
+        LineMap source = scanner.lineMap();
+        Lox.setSource(source);
+        parser.reset(tokens);
+        List<Stmt> statements = parser.parseProgram();
+        // the parser stops at the first error at the end, there are none after it
+        if (mayContinue && !errors.isEmpty() && errors.get(0).isAtEnd()) {
+            errors.clear();
+            return false;
+        }
+
+        Map<Expr, Specializer.Node> specialized = null;
+        if (Lox.typeCheck && errors.isEmpty()) {
+            // the nodes only look at the resolved slots of variables when they run,
+            // on the other thread
+            TypeChecker checker = new TypeChecker(source);
+            specialized = interpreter.specialize(statements, checker);
+            errors.addAll(checker.errors());
+        }
+
+        if (errors.isEmpty()) {
+            put(new Parsed(statements, hasIdentifier(tokens), specialized, null, source));
+        } else {
+            put(new Parsed(null, false, null, new ArrayList<>(errors), source));
+            errors.clear();
+        }
+        return true;
+    }
+
+    // most lines of piped expressions have no variables, this is much cheaper
+    // than walking their statements in the Resolver
+    private static boolean hasIdentifier(List<Token> tokens) {
+        for (Token token : tokens) {
+            if (token.type == TokenType.IDENTIFIER) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // only a '}', a '"' or a "*/" can close what earlier lines left open, so
+    // other lines don't need to be scanned again
+    private static boolean mayClose(String line) {
+        return line.indexOf('}') >= 0 || line.indexOf('"') >= 0 || line.contains("*/");
+    }
+
+    // true if the tokens leave a block, string or comment open, unless there are
+    // other errors (e.g. the input is junk), which are better reported right away
+    private static boolean isOpen(Scanner scanner, List<Token> tokens, List<Diagnostic> errors) {
+        if (scanner.isUnterminated()) {
+            return errors.size() == 1;
+        }
+        if (!errors.isEmpty()) {
+            return false;
+        }
+        int braces = 0;
+        for (Token token : tokens) {
+            if (token.type == TokenType.LEFT_BRACE) {
+                braces++;
+            } else if (token.type == TokenType.RIGHT_BRACE) {
+                braces--;
+            }
+        }
+        return braces > 0;
+    }
+
+    private void put(Parsed parsed) {
+        try {
+            queue.put(parsed);
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(error);
+        }
+    }
+
+    private Parsed take() {
+        try {
+            return queue.take();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(error);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SIMD within a register: tests 8 characters at once by loading them as one
+ * long, for the Scanner to skip runs of whitespace, comments and string bodies
+ * a word at a time instead of a charAt at a time.
+ *
+ * A word is 8 bytes of a Latin-1 copy of part of the source (see Window),
+ * little endian so that the first character is the lowest byte. Masks have the high bit of each byte
+ * that matched set and every other bit clear, so the first match is at
+ * Long.numberOfTrailingZeros(mask) / 8 and the number of matches is
+ * Long.bitCount(mask).
+ */
+final class Swar {
+    static final int WORD = Long.BYTES;
+
+    private static final VarHandle WORDS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    // times a char, the word with it in every byte, for equal
+    static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    static final long HIGH_BITS = 0x8080808080808080L;
+
+    private Swar() {
+    }
+
+    /**
+     * A Latin-1 copy of up to SIZE chars of a source, moved along the source as
+     * it is scanned, so that a large source is never copied all at once. Both
+     * copies it makes (String.getChars and the encoder) are intrinsics.
+     * 
+     * The first char above 0xFF ends the copy for good, the rest of the source
+     * is then scanned a char at a time. Replacing it by a byte would be wrong
+     * e.g. U+010A must not count as a newline.
+     */
+    static final class Window {
+        static final int SIZE = 4096;
+
+        private final char[] chars;
+        private final CharBuffer in;
+        private final ByteBuffer out;
+        private final CharsetEncoder encoder = StandardCharsets.ISO_8859_1.newEncoder();
+        private String source;
+        private boolean latin1;
+
+        final byte[] bytes;
+        int start; // the index in source of bytes[0]
+        int end; // the index in source after the last byte
+
+        /**
+         * @param size at most SIZE, the sources are usually no longer
+         */
+        Window(int size) {
+            chars = new char[size];
+            in = CharBuffer.wrap(chars);
+            bytes = new byte[size];
+            out = ByteBuffer.wrap(bytes);
+        }
+
+        int size() {
+            return bytes.length;
+        }
+
+        void reset(String source) {
+            this.source = source;
+            this.latin1 = true;
+            start = 0;
+            end = 0;
+        }
+
+        /**
+         * Moves the window to index unless it holds a word there already.
+         * 
+         * @return false if it can not hold a word at index, because there is
+         *         less than a word left or a char above 0xFF on the way
+         */
+        boolean fill(int index) {
+            if (index >= start && index + WORD <= end) {
+                return true;
+            }
+            int length = Math.min(chars.length, source.length() - index);
+            if (!latin1 || length < WORD) {
+                return false;
+            }
+
+            source.getChars(index, index + length, chars, 0);
+            in.clear().limit(length);
+            out.clear();
+            encoder.reset();
+            // stops at the first char it can't encode
+            latin1 = encoder.encode(in, out, true).isUnderflow();
+            start = index;
+            end = index + out.position();
+            return end - start >= WORD;
+        }
+    }
+
+    static long load(byte[] bytes, int index) {
+        return (long) WORDS.get(bytes, index);
+    }
+
+    /**
+     * @return the mask of the bytes of word that are equal to those of pattern.
+     *         Exact, unlike the usual haszero trick, as no carry crosses bytes.
+     */
+    static long equal(long word, long pattern) {
+        long x = word ^ pattern; // 0 where equal
+        return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    /**
+     * @return mask with the bits of the bytes before the first match in mask
+     *         set, for counting with Long.bitCount(other & before(mask))
+     */
+    static long before(long mask) {
+        return (mask & -mask) - 1;
+    }
+
+    /**
+     * @return the index of the first matching byte in a non-zero mask
+     */
+    static int first(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+}
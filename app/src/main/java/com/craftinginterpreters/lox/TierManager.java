@@ -0,0 +1,166 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how a CompiledExpr is evaluated, the way a JVM decides whether to
+ * interpret or compile a method. A compiled expression starts out walking its
+ * tree with the Interpreter, which costs nothing up front, and counts its
+ * evaluations. Once it is hot it is promoted on a background thread and the
+ * faster form is swapped in, so evaluations never wait for a promotion:
+ *
+ * - INTERPRETED: the parsed tree, evaluated by the Interpreter.
+ *
+ * - SPECIALIZED: after -Djlox.specializeThreshold evaluations (default 100),
+ * type checked and turned into Specializer nodes that skip the proven type
+ * checks.
+ *
+ * - FOLDED: after -Djlox.foldThreshold evaluations (default 10000), evaluated
+ * once more and replaced by its value (or its error). Compiled expressions
+ * have no variables, so this is always valid; it waits this long only because
+ * it keeps the value (e.g. a large string) around.
+ *
+ * A threshold of 0 promotes on the first evaluation, a negative one never.
+ * Promotions are jlox.Promotion flight recorder events, and how many
+ * evaluations ran in which tier is part of the JMX metrics.
+ */
+class TierManager {
+    enum Tier {
+        INTERPRETED, SPECIALIZED, FOLDED
+    }
+
+    static final int DEFAULT_SPECIALIZE_THRESHOLD = 100;
+    static final int DEFAULT_FOLD_THRESHOLD = 10_000;
+    // promotions waiting for the background thread, any beyond this are dropped
+    // (and tried again on a later evaluation)
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static class Shared {
+        static final TierManager INSTANCE = new TierManager(
+                Integer.getInteger("jlox.specializeThreshold", DEFAULT_SPECIALIZE_THRESHOLD),
+                Integer.getInteger("jlox.foldThreshold", DEFAULT_FOLD_THRESHOLD),
+                backgroundExecutor());
+    }
+
+    private final int specializeThreshold;
+    private final int foldThreshold;
+    private final Executor executor;
+    private final LongAdder[] evaluations = newCounters();
+    private final LongAdder[] promotions = newCounters();
+
+    /**
+     * @param executor runs the promotions, Runnable::run promotes on the
+     *                 evaluating thread (for tests)
+     */
+    TierManager(int specializeThreshold, int foldThreshold, Executor executor) {
+        this.specializeThreshold = specializeThreshold;
+        this.foldThreshold = foldThreshold;
+        this.executor = executor;
+    }
+
+    /**
+     * @return the manager of the expressions compiled by Lox.compile, with the
+     *         thresholds set by -Djlox.specializeThreshold and -Djlox.foldThreshold
+     */
+    static TierManager shared() {
+        return Shared.INSTANCE;
+    }
+
+    // one thread like a JIT compiler thread, a daemon so it never keeps the JVM
+    // alive
+    private static Executor backgroundExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "jlox-tiering");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, pool) -> ((Promotion) runnable).dropped());
+        return executor;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[Tier.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * @return the tier an expression should be promoted to after this many
+     *         evaluations in tier, null if it should stay
+     */
+    Tier promotion(Tier tier, int evaluations) {
+        switch (tier) {
+            case INTERPRETED:
+                if (specializeThreshold >= 0 && evaluations >= specializeThreshold) {
+                    return Tier.SPECIALIZED;
+                }
+                // a fold threshold below the specialize one skips SPECIALIZED
+                if (foldThreshold >= 0 && evaluations >= foldThreshold) {
+                    return Tier.FOLDED;
+                }
+                return null;
+            case SPECIALIZED:
+                return foldThreshold >= 0 && evaluations >= foldThreshold ? Tier.FOLDED : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Queues a promotion.
+     *
+     * @param promote does the work and swaps the result in, on the background
+     *                thread
+     * @param abandon called instead if the queue is full
+     */
+    void promote(Runnable promote, Runnable abandon) {
+        executor.execute(new Promotion(promote, abandon));
+    }
+
+    void recordEvaluation(Tier tier) {
+        evaluations[tier.ordinal()].increment();
+    }
+
+    void recordPromotion(Tier tier) {
+        promotions[tier.ordinal()].increment();
+    }
+
+    /**
+     * @return evaluations of compiled expressions in tier since startup
+     */
+    long evaluationCount(Tier tier) {
+        return evaluations[tier.ordinal()].sum();
+    }
+
+    /**
+     * @return promotions to tier since startup
+     */
+    long promotionCount(Tier tier) {
+        return promotions[tier.ordinal()].sum();
+    }
+
+    private static class Promotion implements Runnable {
+        private final Runnable promote;
+        private final Runnable abandon;
+
+        Promotion(Runnable promote, Runnable abandon) {
+            this.promote = promote;
+            this.abandon = abandon;
+        }
+
+        @Override
+        public void run() {
+            promote.run();
+        }
+
+        void dropped() {
+            abandon.run();
+        }
+    }
+}
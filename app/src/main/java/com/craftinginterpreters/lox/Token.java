@@ -5,12 +5,23 @@ class Token {
   final String lexeme;
   final Object literal;
   final int line;
+  // offset of the first character of the lexeme in the scanned source, or -1 if
+  // unknown. Together with the source's LineMap this gives the column. With
+  // compressed oops a Token is 12 (header) + 3 * 4 (references) + 4 (line) = 28
+  // bytes, padded to 32, so the offset fits into the padding and tokens stay the
+  // same size.
+  final int offset;
 
   Token(TokenType type, String lexeme, Object literal, int line) {
+    this(type, lexeme, literal, line, -1);
+  }
+
+  Token(TokenType type, String lexeme, Object literal, int line, int offset) {
     this.type = type;
     this.lexeme = lexeme;
     this.literal = literal;
     this.line = line;
+    this.offset = offset;
   }
 
   public String toString() {
@@ -0,0 +1,223 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Infers the type of every subexpression without evaluating anything, e.g. in
+ * (1 + 2) * 3 every node is a NUMBER. The type of a node is the type of its
+ * value if evaluating it succeeds, so 1 < "a" is still a BOOLEAN.
+ * 
+ * Every subexpression is always evaluated (the ternary evaluates both
+ * branches), so an operator whose operand types are known to be wrong is
+ * certain to fail at runtime. Those are reported as type errors. A variable
+ * can hold anything, so reading one is UNKNOWN.
+ * 
+ * Specializer checks the expressions it specializes with the same rules (see
+ * binary and unary), so that they are only walked once.
+ * 
+ * Example Usage:
+ * 
+ * <pre>
+ * {@code
+ *      TypeChecker checker = new TypeChecker(lineMap);
+ *      checker.check(expression); // e.g. LoxType.NUMBER
+ *      checker.errors(); // e.g. [line 1] Error at '-': Operand must be a number.
+ * }
+ * </pre>
+ */
+class TypeChecker implements Expr.Visitor<LoxType>, Stmt.Visitor<Void> {
+    private final List<Diagnostic> errors = new ArrayList<>();
+    private final LineMap source; // for the error snippets, may be null
+
+    TypeChecker(LineMap source) {
+        this.source = source;
+    }
+
+    /**
+     * Checks expr and all of its subexpressions.
+     * 
+     * @return the type of expr
+     */
+    LoxType check(Expr expr) {
+        return expr.accept(this);
+    }
+
+    /**
+     * Checks the expressions of all statements, in the order they run.
+     */
+    void check(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+    }
+
+    /**
+     * @return the operators that will certainly fail at runtime, in evaluation
+     *         order
+     */
+    List<Diagnostic> errors() {
+        return errors;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        check(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        check(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        check(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) {
+            check(stmt.initializer);
+        }
+        return null;
+    }
+
+    @Override
+    public LoxType visitTernaryExpr(Expr.Ternary expr) {
+        check(expr.cond);
+        LoxType ifTrue = check(expr.ifTrue);
+        LoxType orElse = check(expr.orElse);
+        return ternary(ifTrue, orElse);
+    }
+
+    @Override
+    public LoxType visitBinaryExpr(Expr.Binary expr) {
+        LoxType left = check(expr.left);
+        LoxType right = check(expr.right);
+        return binary(expr.operator, left, right);
+    }
+
+    @Override
+    public LoxType visitGroupingExpr(Expr.Grouping expr) {
+        return check(expr.expression);
+    }
+
+    @Override
+    public LoxType visitLiteralExpr(Expr.Literal expr) {
+        return LoxType.of(expr.value);
+    }
+
+    @Override
+    public LoxType visitUnaryExpr(Expr.Unary expr) {
+        return unary(expr.operator, check(expr.right));
+    }
+
+    @Override
+    public LoxType visitVariableExpr(Expr.Variable expr) {
+        return LoxType.UNKNOWN;
+    }
+
+    @Override
+    public LoxType visitAssignExpr(Expr.Assign expr) {
+        return check(expr.value);
+    }
+
+    // the rules, also used by Specializer
+
+    static LoxType ternary(LoxType ifTrue, LoxType orElse) {
+        return ifTrue == orElse ? ifTrue : LoxType.UNKNOWN;
+    }
+
+    /**
+     * @return the type of the value of a binary operator with operands of the
+     *         given types. If it is certain to fail that is an error, and the
+     *         type is UNKNOWN
+     */
+    LoxType binary(Token operator, LoxType left, LoxType right) {
+        LoxType type = binaryType(operator.type, left, right);
+        if (type == null) {
+            return error(operator, operator.type == TokenType.PLUS ? "Operands must be two numbers or two strings."
+                    : "Operands must be numbers.");
+        }
+        return type;
+    }
+
+    /**
+     * Same as binary for a unary operator.
+     */
+    LoxType unary(Token operator, LoxType right) {
+        LoxType type = unaryType(operator.type, right);
+        if (type == null) {
+            return error(operator, "Operand must be a number.");
+        }
+        return type;
+    }
+
+    // null if the operator is certain to fail
+    private static LoxType binaryType(TokenType operator, LoxType left, LoxType right) {
+        switch (operator) {
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return numberOperands(left, right, LoxType.BOOLEAN);
+            case MINUS:
+            case SLASH:
+            case STAR:
+                return numberOperands(left, right, LoxType.NUMBER);
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                return LoxType.BOOLEAN;
+            case PLUS:
+                if (left == LoxType.NUMBER && right == LoxType.NUMBER) {
+                    return LoxType.NUMBER;
+                }
+                if (left == LoxType.STRING || right == LoxType.STRING) {
+                    return LoxType.STRING;
+                }
+                if (left.isKnown() && right.isKnown()) {
+                    return null;
+                }
+                // anything but a number on one side only works if the other side is a string
+                if (left.isKnown() && left != LoxType.NUMBER || right.isKnown() && right != LoxType.NUMBER) {
+                    return LoxType.STRING;
+                }
+                return LoxType.UNKNOWN;
+            case COMMA:
+                return LoxType.NIL;
+        }
+
+        // should never be reached
+        return LoxType.UNKNOWN;
+    }
+
+    private static LoxType unaryType(TokenType operator, LoxType right) {
+        switch (operator) {
+            case BANG:
+                return LoxType.BOOLEAN;
+            case MINUS:
+                return right.isKnown() && right != LoxType.NUMBER ? null : LoxType.NUMBER;
+        }
+
+        // should never be reached
+        return LoxType.UNKNOWN;
+    }
+
+    private static LoxType numberOperands(LoxType left, LoxType right, LoxType result) {
+        if (left.isKnown() && left != LoxType.NUMBER || right.isKnown() && right != LoxType.NUMBER) {
+            return null;
+        }
+        return result;
+    }
+
+    // the node never produces a value, UNKNOWN keeps it from causing more errors
+    // further up
+    private LoxType error(Token operator, String message) {
+        errors.add(Diagnostic.type(operator, message, source));
+        return LoxType.UNKNOWN;
+    }
+}
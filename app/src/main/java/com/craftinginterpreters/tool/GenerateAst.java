@@ -29,7 +29,15 @@ public class GenerateAst {
                 "Binary    : Expr left, Token operator, Expr right",
                 "Grouping  : Expr expression",
                 "Literal   : Object value",
-                "Unary     : Token operator, Expr right"));
+                "Unary     : Token operator, Expr right",
+                "Variable  : Token name | int depth = -1, int slot = -1",
+                "Assign    : Token name, Expr value | int depth = -1, int slot = -1"));
+
+        defineAst(outputDir, "Stmt", Arrays.asList(
+                "Block      : List<Stmt> statements | int slots",
+                "Expression : Expr expression",
+                "Print      : Expr expression",
+                "Var        : Token name, Expr initializer | int depth = -1, int slot = -1"));
     }
 
     /**
@@ -37,7 +45,9 @@ public class GenerateAst {
      * @param baseName  name of the abstract base class (e.g. Expr) for the
      *                  generated classes
      * @param types     array of strings that define the classes to generate (in a
-     *                  BNF like form)
+     *                  BNF like form). Fields after a '|' are not set by the
+     *                  constructor but filled in later (by the Resolver), so they
+     *                  are not final and may have an initial value.
      */
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
         String path = outputDir + "/" + baseName + ".java";
@@ -61,8 +71,9 @@ public class GenerateAst {
         for (String type : types) {
             String[] split = type.split(":");
             String className = split[0].trim();
-            String fields = split[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = split[1].split("\\|");
+            String resolvedFields = fields.length > 1 ? fields[1].trim() : "";
+            defineType(writer, baseName, className, fields[0].trim(), resolvedFields);
         }
 
         writer.println();
@@ -96,7 +107,7 @@ public class GenerateAst {
      */
     private static void defineType(
             PrintWriter writer, String baseName,
-            String className, String fieldList) {
+            String className, String fieldList, String resolvedFieldList) {
 
         writer.println("  static class " + className + " extends " + baseName + " {");
 
@@ -124,6 +135,11 @@ public class GenerateAst {
         for (String field : fields) {
             writer.println("    final " + field + ";");
         }
+        if (!resolvedFieldList.isEmpty()) {
+            for (String field : resolvedFieldList.split(", ")) {
+                writer.println("    " + field + ";");
+            }
+        }
         writer.println();
         writer.println("  }");
     }
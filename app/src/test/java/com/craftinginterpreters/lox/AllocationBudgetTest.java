@@ -0,0 +1,122 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Fails the build when a phase allocates more garbage than it used to: bytes
+ * per token for the Scanner, per node for the Parser and per evaluated node
+ * for the Interpreter, on a fixed program of generated variable declarations.
+ *
+ * Allocations are counted with ThreadMXBean.getThreadAllocatedBytes for the
+ * test thread only. Each phase runs a few times and the smallest count is
+ * used, so class loading and other one time work don't count.
+ *
+ * The budgets are checked in next to this class in
+ * allocation-budgets.properties. When a change allocates less, lower them;
+ * when it has to allocate more, raise them in the same change and say why.
+ */
+class AllocationBudgetTest {
+    private static final String BUDGETS = "allocation-budgets.properties";
+    private static final int RUNS = 10;
+    private static final int DECLARATIONS = 50;
+    private static final int MAX_SIZE = 200;
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static Properties budgets;
+    private static String source;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "no allocation counting on this JVM");
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "no allocation counting on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        budgets = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream(BUDGETS)) {
+            budgets.load(in);
+        }
+        source = program();
+    }
+
+    @Test
+    void scannerBytesPerToken() {
+        int tokens = new Scanner(source).scanTokens().size();
+        long bytes = leastAllocated(() -> new Scanner(source).scanTokens());
+        check("scanner.bytesPerToken", "Scanner", "token", bytes, tokens);
+    }
+
+    @Test
+    void parserBytesPerNode() {
+        List<Token> tokens = new Scanner(source).scanTokens();
+        int nodes = LoxEvents.countNodes(new Parser(tokens).parseProgram());
+        long bytes = leastAllocated(() -> new Parser(tokens).parseProgram());
+        check("parser.bytesPerNode", "Parser", "node", bytes, nodes);
+    }
+
+    @Test
+    void interpreterBytesPerEvaluation() {
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parseProgram();
+        Interpreter interpreter = new Interpreter();
+        new Resolver(interpreter.globals).resolve(statements);
+        assertTrue(interpreter.interpret(statements), "corpus fails to run");
+
+        // every node is evaluated exactly once, no errors cut it short
+        long bytes = leastAllocated(() -> interpreter.interpret(statements));
+        check("interpreter.bytesPerEvaluation", "Interpreter", "evaluated node", bytes,
+                LoxEvents.countNodes(statements));
+    }
+
+    private static long leastAllocated(Runnable phase) {
+        long thread = Thread.currentThread().threadId();
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            phase.run();
+            least = Math.min(least, threads.getThreadAllocatedBytes(thread) - before);
+        }
+        return least;
+    }
+
+    private static void check(String key, String phase, String unit, long bytes, int units) {
+        String budget = budgets.getProperty(key);
+        assertFalse(budget == null, key + " is missing from " + BUDGETS);
+        double perUnit = (double) bytes / units;
+        assertTrue(perUnit <= Double.parseDouble(budget), String.format(
+                "%s allocated %.1f bytes per %s (%d bytes for %d), over the budget of %s in %s",
+                phase, perUnit, unit, bytes, units, budget, BUDGETS));
+    }
+
+    // var v0 = <generated expression>; ... numbers and booleans only, seeds that
+    // fail at runtime (e.g. on a division by 0) are skipped
+    private static String program() {
+        StringBuilder program = new StringBuilder();
+        LoxType[] types = { LoxType.NUMBER, LoxType.BOOLEAN };
+        int declared = 0;
+        for (long seed = 0; declared < DECLARATIONS; seed++) {
+            Expr expression = new ExprGenerator(seed, 32, true).generate(types[declared % 2], MAX_SIZE);
+            try {
+                new Interpreter().evaluate(expression);
+            } catch (RuntimeError error) {
+                continue;
+            }
+            program.append("var v").append(declared++).append(" = ");
+            program.append(new SourcePrinter().print(expression)).append(";\n");
+        }
+        assertEquals(DECLARATIONS, program.toString().split("\n").length);
+        return program.toString();
+    }
+}
@@ -0,0 +1,233 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs random expressions through every way we have of evaluating them and
+ * checks that they all agree with the Interpreter on the generated tree, both
+ * on values and on which operator fails with which message.
+ *
+ * Each program is printed as source, scanned and parsed again, so the Scanner,
+ * Parser and AstPrinter are covered too. Programs with variables are also run
+ * after declaring most of them, by the evaluators that can see variables. Set -Dlox.differential.programs to
+ * run more (or fewer) programs; a failure names the seed to reproduce it with.
+ */
+class DifferentialTest {
+    private static final int PROGRAMS = Integer.getInteger("lox.differential.programs", 2000);
+    private static final int MAX_SIZE = 200;
+    private static final int MAX_DEPTH = 32;
+    // tiny threshold so that even small programs are split between tasks
+    private static final ParallelEvaluator PARALLEL = new ParallelEvaluator(ForkJoinPool.commonPool(), 4);
+    // promotes on the evaluating thread, after one evaluation and after two
+    private static final TierManager TIERS = new TierManager(1, 2, Runnable::run);
+    // shared by all programs, like in a REPL session
+    private static final MemoizingInterpreter MEMOIZING = new MemoizingInterpreter(new ExprMemo(1024));
+    private static final ExprMemo MEMO = new ExprMemo(1024);
+    // the variables of the generated expressions, all but d are declared by
+    // DECLARATIONS, so d is an undefined variable wherever it turns up
+    private static final String[] VARIABLES = { "a", "b", "c", "d" };
+    private static final String DECLARATIONS = "var a = 1; var b = \"lorem\"; var c = nil;";
+
+    @Test
+    void anyExpressionsAgree() {
+        for (int seed = 0; seed < PROGRAMS; seed++) {
+            ExprGenerator generator = new ExprGenerator(seed, MAX_DEPTH, false);
+            check(seed, generator.generate(1 + seed % MAX_SIZE));
+        }
+    }
+
+    @Test
+    void wellTypedExpressionsAgree() {
+        LoxType[] types = { LoxType.NUMBER, LoxType.STRING, LoxType.BOOLEAN, LoxType.NIL };
+        for (int seed = 0; seed < PROGRAMS; seed++) {
+            ExprGenerator generator = new ExprGenerator(seed, MAX_DEPTH, true);
+            check(seed, generator.generate(types[seed % types.length], 1 + seed % MAX_SIZE));
+        }
+    }
+
+    @Test
+    void expressionsWithVariablesAgree() {
+        for (int seed = 0; seed < PROGRAMS; seed++) {
+            ExprGenerator generator = new ExprGenerator(seed, MAX_DEPTH, false, VARIABLES);
+            Expr generated = generator.generate(1 + seed % MAX_SIZE);
+            // as an expression on its own every variable is undefined
+            check(seed, generated);
+            checkDeclared(seed, new SourcePrinter().print(generated));
+        }
+    }
+
+    private void check(int seed, Expr generated) {
+        String source = new SourcePrinter().print(generated);
+        String context = "seed " + seed + ": " + source;
+
+        Expr reparsed = parse(source);
+        assertNotNull(reparsed, context);
+        assertEquals(new AstPrinter().print(generated), new AstPrinter().print(reparsed), context);
+        assertEquals(source, new SourcePrinter().print(reparsed), context);
+
+        Outcome expected = Outcome.of(() -> new Interpreter().evaluate(generated));
+        Outcome interpreted = Outcome.of(() -> new Interpreter().evaluate(reparsed));
+        CompiledExpr compiled = new CompiledExpr(source, reparsed, TIERS);
+        Outcome tiered = Outcome.of(compiled::evaluate);
+        assertEquals("SPECIALIZED", compiled.tier(), context);
+        Outcome specialized = Outcome.of(compiled::evaluate);
+        assertEquals("FOLDED", compiled.tier(), context);
+        Outcome folded = Outcome.of(compiled::evaluate);
+        Outcome parallel = Outcome.of(() -> PARALLEL.evaluate(reparsed));
+        Outcome stacked = Outcome.of(() -> new StackEvaluator(new Interpreter()).evaluate(reparsed));
+        // the generated tree fills the memo, so the reparsed one hits it and has to get
+        // errors on its own tokens
+        Outcome.of(() -> MEMOIZING.evaluate(generated, null));
+        Outcome memoized = Outcome.of(() -> MEMOIZING.evaluate(reparsed, null));
+
+        // the generated tree has its own tokens, the reparsed ones come from the scanner
+        Map<Token, Token> tokens = new IdentityHashMap<>();
+        pairTokens(generated, reparsed, tokens);
+        assertEquals(expected.value, interpreted.value, context);
+        assertEquals(expected.message, interpreted.message, context);
+        assertSame(tokens.get(expected.token), interpreted.token, context);
+
+        for (Outcome outcome : new Outcome[] { tiered, specialized, folded, stacked }) {
+            assertEquals(interpreted.value, outcome.value, context);
+            assertEquals(interpreted.message, outcome.message, context);
+            assertSame(interpreted.token, outcome.token, context);
+        }
+
+        assertEquals(interpreted.value, parallel.value, context);
+        assertEquals(interpreted.message, parallel.message, context);
+        assertSame(interpreted.token, parallel.token, context);
+
+        assertEquals(interpreted.value, memoized.value, context);
+        assertEquals(interpreted.message, memoized.message, context);
+        assertSame(interpreted.token, memoized.token, context);
+
+        // type errors are only reported for operators that are certain to fail
+        boolean hasTypeErrors = !compiled.typeErrors().isEmpty();
+        if (hasTypeErrors) {
+            assertNotNull(interpreted.message, context + " has type errors but evaluates");
+        }
+    }
+
+    // evaluates source after DECLARATIONS with each way of evaluating that can see
+    // variables, and compares the variables afterwards too
+    private void checkDeclared(int seed, String source) {
+        String context = "seed " + seed + ", declared: " + source;
+        Expr expr = parse(source);
+
+        Interpreter interpreter = declared(new Interpreter(), expr);
+        Outcome interpreted = Outcome.of(() -> interpreter.evaluate(expr, null));
+        Interpreter stacking = declared(new Interpreter(), expr);
+        Outcome stacked = Outcome.of(() -> new StackEvaluator(stacking).evaluate(expr));
+        Interpreter forking = declared(new Interpreter(), expr);
+        Outcome parallel = Outcome.of(() -> PARALLEL.evaluate(expr, forking));
+        // subexpressions without variables are memoized, the others must not be
+        Interpreter memoizing = declared(new MemoizingInterpreter(MEMO), expr);
+        Outcome memoized = Outcome.of(() -> memoizing.evaluate(expr, null));
+
+        List<Object> variables = variables(interpreter);
+        Outcome[] outcomes = { stacked, parallel, memoized };
+        Interpreter[] interpreters = { stacking, forking, memoizing };
+        for (int i = 0; i < outcomes.length; i++) {
+            assertEquals(interpreted.value, outcomes[i].value, context);
+            assertEquals(interpreted.message, outcomes[i].message, context);
+            assertSame(interpreted.token, outcomes[i].token, context);
+            assertEquals(variables, variables(interpreters[i]), context);
+        }
+    }
+
+    // runs DECLARATIONS on interpreter and resolves expr against its globals. The
+    // names get the same slots in every Interpreter, so expr can be resolved
+    // again for another one
+    private static Interpreter declared(Interpreter interpreter, Expr expr) {
+        List<Stmt> declarations = new Parser(new Scanner(DECLARATIONS).scanTokens()).parseProgram();
+        Resolver resolver = new Resolver(interpreter.globals);
+        resolver.resolve(declarations);
+        interpreter.execute(declarations);
+        resolver.resolve(List.of(new Stmt.Expression(expr)));
+        return interpreter;
+    }
+
+    // the value of each variable, or the error reading it
+    private static List<Object> variables(Interpreter interpreter) {
+        List<Object> values = new ArrayList<>();
+        for (String name : VARIABLES) {
+            Token token = new Token(TokenType.IDENTIFIER, name, null, 1);
+            Outcome outcome = Outcome.of(() -> interpreter.globals.get(token, interpreter.globals.slot(name)));
+            values.add(outcome.message != null ? outcome.message : outcome.value);
+        }
+        return values;
+    }
+
+    private static Expr parse(String source) {
+        Lox.beginCollectingErrors();
+        try {
+            return new Parser(new Scanner(source).scanTokens()).parse();
+        } finally {
+            Lox.endCollectingErrors();
+        }
+    }
+
+    // the two trees have the same shape, AstPrinter said so
+    private static void pairTokens(Expr generated, Expr reparsed, Map<Token, Token> tokens) {
+        if (generated instanceof Expr.Binary) {
+            Expr.Binary left = (Expr.Binary) generated;
+            Expr.Binary right = (Expr.Binary) reparsed;
+            tokens.put(left.operator, right.operator);
+            pairTokens(left.left, right.left, tokens);
+            pairTokens(left.right, right.right, tokens);
+        } else if (generated instanceof Expr.Unary) {
+            Expr.Unary left = (Expr.Unary) generated;
+            Expr.Unary right = (Expr.Unary) reparsed;
+            tokens.put(left.operator, right.operator);
+            pairTokens(left.right, right.right, tokens);
+        } else if (generated instanceof Expr.Variable) {
+            tokens.put(((Expr.Variable) generated).name, ((Expr.Variable) reparsed).name);
+        } else if (generated instanceof Expr.Assign) {
+            Expr.Assign left = (Expr.Assign) generated;
+            Expr.Assign right = (Expr.Assign) reparsed;
+            tokens.put(left.name, right.name);
+            pairTokens(left.value, right.value, tokens);
+        } else if (generated instanceof Expr.Grouping) {
+            pairTokens(((Expr.Grouping) generated).expression, ((Expr.Grouping) reparsed).expression, tokens);
+        } else if (generated instanceof Expr.Ternary) {
+            Expr.Ternary left = (Expr.Ternary) generated;
+            Expr.Ternary right = (Expr.Ternary) reparsed;
+            pairTokens(left.cond, right.cond, tokens);
+            pairTokens(left.ifTrue, right.ifTrue, tokens);
+            pairTokens(left.orElse, right.orElse, tokens);
+        }
+    }
+
+    // either a value or a runtime error
+    private static class Outcome {
+        final Object value;
+        final String message;
+        final Token token;
+
+        private Outcome(Object value, String message, Token token) {
+            this.value = value;
+            this.message = message;
+            this.token = token;
+        }
+
+        static Outcome of(Supplier<Object> evaluation) {
+            try {
+                return new Outcome(evaluation.get(), null, null);
+            } catch (RuntimeError error) {
+                return new Outcome(null, Objects.requireNonNull(error.getMessage()), error.token);
+            }
+        }
+    }
+}
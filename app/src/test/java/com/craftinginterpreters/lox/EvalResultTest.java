@@ -0,0 +1,94 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lox.evaluate returns what went wrong instead of throwing or printing it:
+ * every case runs with stdout and stderr captured, which have to stay empty.
+ */
+class EvalResultTest {
+    @Test
+    void succeeds() {
+        EvalResult result = evaluate("1 + 2 * 3");
+        assertTrue(result.isSuccess());
+        assertEquals(7.0, result.value());
+        assertEquals("7", result.valueAsString());
+        assertTrue(result.diagnostics().isEmpty());
+    }
+
+    @Test
+    void returnsSyntaxErrors() {
+        EvalResult result = evaluate("1 + * 2");
+        assertFalse(result.isSuccess());
+        assertNull(result.value());
+        Diagnostic error = single(result);
+        assertEquals(Diagnostic.Kind.SYNTAX, error.kind());
+        assertEquals("[line 1] Error at '*': Expected expression.", error.toString());
+        assertEquals(5, error.column());
+        assertNotNull(error.snippet());
+    }
+
+    @Test
+    void givesUpAfterTooManySyntaxErrors() {
+        EvalResult result = evaluate("1" + " @ 1".repeat(Lox.maxErrors + 5));
+        List<Diagnostic> errors = result.diagnostics();
+        // and a note instead of the rest
+        assertEquals(Lox.maxErrors + 1, errors.size());
+        assertEquals("[line 1] Error: Unexpected character.", errors.get(0).toString());
+        assertEquals("Too many errors, giving up.", errors.get(Lox.maxErrors).message());
+    }
+
+    @Test
+    void returnsRuntimeErrors() {
+        EvalResult result = evaluate("1 +\n2 / (1 - 1)");
+        assertFalse(result.isSuccess());
+        Diagnostic error = single(result);
+        assertEquals(Diagnostic.Kind.RUNTIME, error.kind());
+        assertEquals("Division by zero.", error.message());
+        assertEquals(2, error.line());
+        assertEquals(3, error.column());
+
+        error = single(evaluate("-\"one\""));
+        assertEquals("Operand must be a number.", error.message());
+    }
+
+    @Test
+    void returnsTooDeeplyNestedExpressions() {
+        Diagnostic error = single(evaluate("(".repeat(100_000) + "1" + ")".repeat(100_000)));
+        assertEquals("Expression nested too deeply.", error.message());
+    }
+
+    private static Diagnostic single(EvalResult result) {
+        List<Diagnostic> diagnostics = result.diagnostics();
+        assertEquals(1, diagnostics.size(), diagnostics.toString());
+        return diagnostics.get(0);
+    }
+
+    // Lox.evaluate(source), checking that it printed nothing
+    private static EvalResult evaluate(String source) {
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(printed, true));
+        System.setErr(new PrintStream(printed, true));
+        EvalResult result;
+        try {
+            result = Lox.evaluate(source);
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertEquals("", printed.toString());
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * The compile cache: which expression it evicts when full, its size from
+ * -Djlox.cacheSize and the statistics it keeps, also for the shared cache
+ * behind Lox.compile.
+ */
+class ExprCacheTest {
+    @Test
+    void evictsTheLeastRecentlyUsed() {
+        ExprCache cache = new ExprCache(3);
+        CompiledExpr a = cache.get("1");
+        CompiledExpr b = cache.get("2");
+        cache.get("3");
+        // a is used again, so b is now the least recently used
+        assertSame(a, cache.get("1"));
+        cache.get("4");
+
+        assertEquals(3, cache.size());
+        assertSame(a, cache.get("1"));
+        // compiled again
+        assertNotSame(b, cache.get("2"));
+        assertEquals(3, cache.size());
+
+        CacheStats stats = cache.stats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(5, stats.missCount());
+        // 4 pushed out b, then b pushed out 3
+        assertEquals(2, stats.evictionCount());
+        assertEquals(2.0 / 7, stats.hitRate());
+    }
+
+    @Test
+    void doesNotCacheSyntaxErrors() {
+        ExprCache cache = new ExprCache(3);
+        assertThrows(CompileError.class, () -> cache.get("1 +"));
+        assertThrows(CompileError.class, () -> cache.get("1 +"));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    void sizeComesFromSystemProperty() {
+        String previous = System.getProperty("jlox.cacheSize");
+        try {
+            System.clearProperty("jlox.cacheSize");
+            assertEquals(ExprCache.DEFAULT_MAXIMUM_SIZE, ExprCache.fromSystemProperties().maximumSize());
+
+            System.setProperty("jlox.cacheSize", "2");
+            ExprCache cache = ExprCache.fromSystemProperties();
+            assertEquals(2, cache.maximumSize());
+            for (int i = 0; i < 5; i++) {
+                cache.get(Integer.toString(i));
+            }
+            assertEquals(2, cache.size());
+            assertEquals(3, cache.stats().evictionCount());
+        } finally {
+            if (previous == null) {
+                System.clearProperty("jlox.cacheSize");
+            } else {
+                System.setProperty("jlox.cacheSize", previous);
+            }
+        }
+    }
+
+    @Test
+    void sharedCacheStats() {
+        // sources no other test compiles, so they start out as misses
+        String source = "0.5 + 0.25 * 0.125";
+        CacheStats before = CompiledExpr.cacheStats();
+        CompiledExpr compiled = Lox.compile(source);
+        assertSame(compiled, Lox.compile(source));
+        CacheStats after = CompiledExpr.cacheStats();
+        assertEquals(before.hitCount() + 1, after.hitCount());
+        assertEquals(before.missCount() + 1, after.missCount());
+
+        // filling the cache with new expressions pushes source out
+        long size = ExprCache.shared().maximumSize();
+        for (long i = 0; i < size; i++) {
+            Lox.compile("0.5 - " + i);
+        }
+        CacheStats full = CompiledExpr.cacheStats();
+        assertEquals(after.missCount() + size, full.missCount());
+        assertEquals(size, ExprCache.shared().size());
+        assertTrue(full.evictionCount() > after.evictionCount());
+        assertNotSame(compiled, Lox.compile(source));
+    }
+}
@@ -0,0 +1,92 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Error locations: the lines and columns LineMap finds for offsets, and the
+ * snippets with a caret under the error, directly and through the diagnostics
+ * of Lox.evaluate.
+ */
+class LineMapTest {
+    // the width of the "%6d | " gutter
+    private static final String GUTTER = " ".repeat(9);
+
+    @Test
+    void findsLinesAndColumns() {
+        LineMap map = new LineMap("ab\ncd\r\n\nef", 10);
+        assertEquals(10, map.line(0));
+        assertEquals(2, map.column(1));
+        // the line break belongs to the line it ends
+        assertEquals(10, map.line(2));
+        assertEquals(3, map.column(2));
+        assertEquals(11, map.line(3));
+        assertEquals(1, map.column(3));
+        assertEquals(12, map.line(7));
+        assertEquals(13, map.line(8));
+        assertEquals(2, map.column(9));
+        // the end of the source, where EOF is
+        assertEquals(13, map.line(10));
+        assertEquals(3, map.column(10));
+
+        assertEquals("cd", map.text(11));
+        assertEquals("", map.text(12));
+        assertNull(map.text(9));
+        assertNull(map.text(14));
+    }
+
+    @Test
+    void putsTheCaretUnderTheError() {
+        LineMap map = new LineMap("1 + (2 * )\nprint nothing;", 1);
+        assertEquals("     1 | 1 + (2 * )\n" + GUTTER + "         ^-- Here.", map.snippet(9, 1));
+        // as wide as the token, but not past the end of its line
+        assertEquals("     2 | print nothing;\n" + GUTTER + "      ^^^^^^^-- Here.", map.snippet(17, 7));
+        assertEquals("     1 | 1 + (2 * )\n" + GUTTER + "         ^-- Here.", map.snippet(9, 5));
+    }
+
+    @Test
+    void keepsTabsSoTheCaretLinesUp() {
+        LineMap map = new LineMap("\tfoo\t+ bar", 1);
+        assertEquals("     1 | \tfoo\t+ bar\n" + GUTTER + "\t   \t^-- Here.", map.snippet(5, 1));
+        assertEquals(6, map.column(5));
+    }
+
+    @Test
+    void reportsErrorsAtTheEnd() {
+        EvalResult result = Lox.evaluate("1 +");
+        assertFalse(result.isSuccess());
+        Diagnostic error = result.diagnostics().get(0);
+        assertEquals("[line 1] Error at end: Expected expression.", error.toString());
+        assertEquals(4, error.column());
+        assertEquals("     1 | 1 +\n" + GUTTER + "   ^-- Here.", error.snippet());
+
+        // after the last line break, on a line of its own
+        error = Lox.evaluate("1 +\n").diagnostics().get(0);
+        assertEquals(2, error.line());
+        assertEquals(1, error.column());
+        assertEquals("     2 | \n" + GUTTER + "^-- Here.", error.snippet());
+    }
+
+    @Test
+    void locatesErrorsInMultiLineSources() {
+        Diagnostic syntax = Lox.evaluate("1 +\n  (2 *\n\t)").diagnostics().get(0);
+        assertEquals(3, syntax.line());
+        assertEquals(2, syntax.column());
+        assertEquals("     3 | \t)\n" + GUTTER + "\t^-- Here.", syntax.snippet());
+
+        Diagnostic runtime = Lox.evaluate("1 +\n  2 / (1 - 1) +\n  3").diagnostics().get(0);
+        assertEquals("Division by zero.\n[line 2]", runtime.toString());
+        assertEquals(5, runtime.column());
+        assertEquals("     2 |   2 / (1 - 1) +\n" + GUTTER + "    ^-- Here.", runtime.snippet());
+    }
+
+    @Test
+    void compiledExpressionsKeepTheirMap() {
+        CompiledExpr compiled = Lox.compile("1 +\n2");
+        assertSame(compiled.lineMap(), compiled.lineMap());
+    }
+}
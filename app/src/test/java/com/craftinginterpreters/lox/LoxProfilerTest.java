@@ -0,0 +1,104 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Drives the LoxProfiler's shadow stack and samples by hand, without its
+ * sampler thread, and checks the reports it writes.
+ */
+class LoxProfilerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void countsStacksAndLines() throws IOException {
+        LoxProfiler profiler = new LoxProfiler(LoxProfiler.DEFAULT_INTERVAL_MICROS);
+        profiler.sample(); // not interpreting, doesn't count
+
+        int root = profiler.enter(null);
+        profiler.enter(token("+", 1));
+        int star = profiler.enter(token("*", 2));
+        profiler.sample();
+        profiler.exit(star);
+        // a chain of the same operator on the same line is one frame
+        profiler.enter(token("+", 1));
+        profiler.enter(token("-", 1));
+        profiler.sample();
+        profiler.sample();
+        profiler.exit(root);
+        profiler.sample();
+
+        Path path = directory.resolve("profile");
+        profiler.write(path, new LineMap("a + b + c - d\n  e * f", 1));
+
+        assertEquals(List.of(
+                "jlox;+ (line 1);* (line 2) 1",
+                "jlox;+ (line 1);- (line 1) 2"), read(path, ".collapsed"));
+        assertEquals(List.of(
+                "3 samples, one every 1000 us",
+                "",
+                String.format("%6s %7s %7s  %s", "line", "self", "total", "source"),
+                // counted once per sample, however many of its frames were on the stack
+                row(1, 2 * 100.0 / 3, 100.0, "a + b + c - d"),
+                row(2, 100.0 / 3, 100.0 / 3, "e * f")), read(path, ".lines.txt"));
+    }
+
+    @Test
+    void cutsDeepStacks() throws IOException {
+        int depth = 2 * LoxProfiler.EDGE_FRAMES + 10;
+        LoxProfiler profiler = new LoxProfiler(LoxProfiler.DEFAULT_INTERVAL_MICROS);
+        profiler.enter(null);
+        StringBuilder source = new StringBuilder();
+        for (int line = 1; line <= depth; line++) {
+            profiler.enter(token("+", line));
+            source.append("1 +\n");
+        }
+        profiler.sample();
+
+        Path path = directory.resolve("deep");
+        profiler.write(path, new LineMap(source.toString(), 1));
+
+        // the outermost and innermost EDGE_FRAMES - 1 and EDGE_FRAMES frames
+        StringBuilder stack = new StringBuilder("jlox");
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 1; line <= depth; line++) {
+            if (line == LoxProfiler.EDGE_FRAMES) {
+                stack.append(";...");
+                line = depth - LoxProfiler.EDGE_FRAMES + 1;
+            }
+            stack.append(";+ (line ").append(line).append(")");
+            lines.add(line);
+        }
+        assertEquals(List.of(stack + " 1"), read(path, ".collapsed"));
+
+        List<String> report = read(path, ".lines.txt");
+        assertEquals(3 + lines.size(), report.size());
+        // the innermost line first, the rest in line order since they tie
+        assertEquals(row(depth, 100, 100, "1 +"), report.get(3));
+        assertEquals(row(1, 0, 100, "1 +"), report.get(4));
+        assertEquals(row(LoxProfiler.EDGE_FRAMES - 1, 0, 100, "1 +"), report.get(2 + LoxProfiler.EDGE_FRAMES));
+        assertEquals(row(depth - LoxProfiler.EDGE_FRAMES + 1, 0, 100, "1 +"),
+                report.get(3 + LoxProfiler.EDGE_FRAMES));
+    }
+
+    private static Token token(String lexeme, int line) {
+        return new Token(TokenType.PLUS, lexeme, null, line);
+    }
+
+    private static String row(int line, double self, double total, String source) {
+        return String.format("%6d %6.1f%% %6.1f%%  %s", line, self, total, source);
+    }
+
+    private static List<String> read(Path path, String extension) throws IOException {
+        return Files.readAllLines(path.resolveSibling(path.getFileName() + extension));
+    }
+}
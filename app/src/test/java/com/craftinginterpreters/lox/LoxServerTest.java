@@ -0,0 +1,57 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * A connection to the LoxServer over a loopback socket: every line gets its
+ * answer, and errors leave the connection usable.
+ */
+class LoxServerTest {
+    @Test
+    void answersEveryLine() throws IOException, InterruptedException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            int port = ((InetSocketAddress) server.getLocalAddress()).getPort();
+
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                SocketChannel client = server.accept();
+                Thread handler = new Thread(() -> new LoxServer(Integer.toString(port)).handle(client));
+                handler.start();
+
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                // pipelined, the answers come back in order
+                out.write("1 + 2 * 3\n(1 +\n1 / 0\n");
+                out.write("-".repeat(1_000_000) + "1\n");
+                out.write("\"still \" + \"here\"\n");
+                out.flush();
+
+                assertEquals("7", in.readLine());
+                assertEquals("error: [line 1] Error at end: Expected expression.", in.readLine());
+                assertEquals("error: Division by zero. [line 1]", in.readLine());
+                assertEquals("error: Expression nested too deeply.", in.readLine());
+                assertEquals("still here", in.readLine());
+
+                socket.shutdownOutput();
+                assertNull(in.readLine());
+                handler.join();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * An EvaluationBudget limits the MemoizingInterpreter like the Interpreter:
+ * a memoized subexpression costs the steps of all of its nodes, and can time
+ * out or be cancelled.
+ */
+class MemoizingInterpreterTest {
+    // 1199 nodes, more than EvaluationBudget checks the clock and cancel after
+    private static final int TERMS = 600;
+    private static final String SUM = "1" + " + 1".repeat(TERMS - 1);
+    private static final int NODES = 2 * TERMS - 1;
+
+    @Test
+    void memoizedNodesCountAsSteps() {
+        Expr sum = expression(SUM);
+        MemoizingInterpreter interpreter = memoized(new ExprMemo(64), sum);
+
+        assertEquals((double) TERMS, interpreter.evaluate(sum, budget(NODES, null)));
+        BudgetExceededError error = assertThrows(BudgetExceededError.class,
+                () -> interpreter.evaluate(sum, budget(NODES - 1, null)));
+        assertEquals("Evaluation exceeded the limit of " + (NODES - 1) + " steps.", error.getMessage());
+        // the operator of the memoized subexpression
+        assertEquals("+", error.token.lexeme);
+
+        // the same limits as without the memo
+        Interpreter plain = new Interpreter();
+        assertEquals((double) TERMS, plain.evaluate(sum, budget(NODES, null)));
+        assertThrows(BudgetExceededError.class, () -> plain.evaluate(sum, budget(NODES - 1, null)));
+    }
+
+    @Test
+    void memoizedEvaluationTimesOut() {
+        Expr sum = expression(SUM);
+        MemoizingInterpreter interpreter = memoized(new ExprMemo(64), sum);
+
+        BudgetExceededError error = assertThrows(BudgetExceededError.class,
+                () -> interpreter.evaluate(sum, budget(EvaluationBudget.UNLIMITED, Duration.ZERO)));
+        assertEquals("Evaluation timed out.", error.getMessage());
+    }
+
+    @Test
+    void memoizedEvaluationIsCancelled() {
+        Expr sum = expression(SUM);
+        MemoizingInterpreter interpreter = memoized(new ExprMemo(64), sum);
+
+        EvaluationBudget budget = budget(EvaluationBudget.UNLIMITED, null);
+        budget.cancel();
+        BudgetExceededError error = assertThrows(BudgetExceededError.class, () -> interpreter.evaluate(sum, budget));
+        assertEquals("Evaluation cancelled.", error.getMessage());
+    }
+
+    @Test
+    void memoizedEvaluationIsCancelledFromAnotherThread() {
+        // a few nodes of its own around memoized sums, which are most of its steps
+        Expr sums = expression("(" + SUM + ") * 2 - (" + SUM + ") / 3 + (" + SUM + ")");
+        CancellingMemo memo = new CancellingMemo();
+        MemoizingInterpreter interpreter = memoized(memo, expression(SUM));
+        EvaluationBudget budget = budget(EvaluationBudget.UNLIMITED, null);
+        memo.budget = budget;
+
+        BudgetExceededError error = assertThrows(BudgetExceededError.class, () -> interpreter.evaluate(sums, budget));
+        assertEquals("Evaluation cancelled.", error.getMessage());
+        assertNotNull(error.token);
+    }
+
+    // cancels budget on another thread when it is first consulted, the
+    // evaluation goes on until the budget notices
+    private static final class CancellingMemo extends ExprMemo {
+        EvaluationBudget budget;
+
+        CancellingMemo() {
+            super(64);
+        }
+
+        @Override
+        Result get(Key key) {
+            if (budget != null) {
+                Thread canceller = new Thread(budget::cancel);
+                budget = null;
+                canceller.start();
+                try {
+                    canceller.join();
+                } catch (InterruptedException error) {
+                    throw new AssertionError(error);
+                }
+            }
+            return super.get(key);
+        }
+    }
+
+    // an interpreter whose memo has the value of expr
+    private static MemoizingInterpreter memoized(ExprMemo memo, Expr expr) {
+        MemoizingInterpreter interpreter = new MemoizingInterpreter(memo);
+        interpreter.evaluate(expr, null);
+        return interpreter;
+    }
+
+    private static EvaluationBudget budget(long maxSteps, Duration timeout) {
+        return new EvaluationBudget(maxSteps, timeout, EvaluationBudget.UNLIMITED);
+    }
+
+    private static Expr expression(String source) {
+        return new Parser(new Scanner(source).scanTokens()).parse();
+    }
+}
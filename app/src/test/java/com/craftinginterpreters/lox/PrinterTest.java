@@ -0,0 +1,82 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * What AstPrinter and ReversePolishNotationPrinter print for every kind of
+ * expression, and that a tree too deep to walk recursively prints just the
+ * same.
+ */
+class PrinterTest {
+    @Test
+    void printsTrees() {
+        assertEquals("(+ 1.0 (* 2.0 3.0))", tree("1 + 2 * 3"));
+        assertEquals("(* (group (+ 1.0 2.0)) (- 3.0))", tree("(1 + 2) * -3"));
+        assertEquals("(? (== a nil) b (? c d e))", tree("a == nil ? b : c ? d : e"));
+        assertEquals("(= a (= b 1.0))", tree("a = b = 1"));
+        assertEquals("(! (group (< x y)))", tree("!(x < y)"));
+        assertEquals("(+ hi 1.0)", tree("\"hi\" + 1"));
+    }
+
+    @Test
+    void printsReversePolishNotation() {
+        assertEquals("1.0 2.0 3.0 * +", rpn("1 + 2 * 3"));
+        // groupings only change the order
+        assertEquals("1.0 2.0 + 3.0 - *", rpn("(1 + 2) * -3"));
+        assertEquals("a b c ?:", rpn("a ? b : c"));
+        assertEquals("a nil == b c d e ?: ?:", rpn("a == nil ? b : c ? d : e"));
+        assertEquals("a 1.0 =", rpn("a = 1"));
+        assertEquals("a b 1.0 = =", rpn("a = b = 1"));
+    }
+
+    @Test
+    void printsToAnAppendable() throws IOException {
+        Expr expr = parse("(1 + 2) * -3");
+        StringWriter tree = new StringWriter();
+        new AstPrinter().print(expr, tree);
+        assertEquals(new AstPrinter().print(expr), tree.toString());
+
+        StringWriter rpn = new StringWriter();
+        new ReversePolishNotationPrinter().print(expr, rpn);
+        assertEquals(new ReversePolishNotationPrinter().print(expr), rpn.toString());
+    }
+
+    @Test
+    void printsVeryDeepTrees() {
+        int depth = 1_000_000;
+        Token plus = new Token(TokenType.PLUS, "+", null, 1);
+        Expr expr = new Expr.Literal(1.0);
+        for (int i = 0; i < depth; i++) {
+            expr = new Expr.Binary(expr, plus, new Expr.Literal(1.0));
+        }
+
+        assertEquals("(+ ".repeat(depth) + "1.0" + " 1.0)".repeat(depth), new AstPrinter().print(expr));
+        assertEquals("1.0" + " 1.0 +".repeat(depth), new ReversePolishNotationPrinter().print(expr));
+    }
+
+    private static String tree(String source) {
+        return new AstPrinter().print(parse(source));
+    }
+
+    private static String rpn(String source) {
+        return new ReversePolishNotationPrinter().print(parse(source));
+    }
+
+    private static Expr parse(String source) {
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        try {
+            Expr expr = new Parser(new Scanner(source).scanTokens()).parse();
+            assertTrue(errors.isEmpty(), errors.toString());
+            return expr;
+        } finally {
+            Lox.endCollectingErrors();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Skipping a word at a time through Swar.Window: runs of whitespace, comments
+ * and strings across the ends of the window, and sources that are not Latin-1.
+ */
+class ScannerTest {
+    private static final int SIZE = Swar.Window.SIZE;
+
+    @Test
+    void skipsAcrossTheWindow() {
+        // every alignment of the runs with the window and its words
+        for (int shift = 0; shift < 2 * Swar.WORD; shift++) {
+            String source = " ".repeat(SIZE - shift) + "\n\n1 /* " + "*\n".repeat(SIZE) + "*/ 2 \""
+                    + "a\n".repeat(SIZE) + "\" 3";
+            List<Token> tokens = new Scanner(source).scanTokens();
+
+            assertEquals(List.of("1@3", "2@" + (3 + SIZE), "STRING@" + (3 + 2 * SIZE), "3@" + (3 + 2 * SIZE),
+                    "EOF@" + (3 + 2 * SIZE)), describe(tokens), "shift " + shift);
+            assertEquals("a\n".repeat(SIZE), tokens.get(2).literal);
+            assertEquals(source.length() - 1, tokens.get(3).offset);
+        }
+    }
+
+    @Test
+    void scansCharsAboveLatin1ACharAtATime() {
+        // U+010A is not a newline, although its low byte is
+        String text = "\u00E9\u010A".repeat(100);
+        String source = "\"" + text + "\"" + " ".repeat(100) + "\n\t\n" + "\u2192".repeat(10) + "\n".repeat(20) + "1";
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        List<Token> tokens;
+        try {
+            tokens = new Scanner(source).scanTokens();
+        } finally {
+            Lox.endCollectingErrors();
+        }
+
+        assertEquals(text, tokens.get(0).literal);
+        // the arrows are one run of unexpected characters
+        assertEquals(1, errors.size());
+        assertEquals(List.of("STRING@1", "1@23", "EOF@23"), describe(tokens));
+    }
+
+    private static List<String> describe(List<Token> tokens) {
+        List<String> described = new ArrayList<>();
+        for (Token token : tokens) {
+            String name = token.type == TokenType.NUMBER ? token.lexeme : token.type.name();
+            described.add(name + "@" + token.line);
+        }
+        return described;
+    }
+}
@@ -0,0 +1,118 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * TypeChecker and Specializer: which operations skip their runtime type checks,
+ * that the Interpreter evaluates statements with those, and the type errors
+ * reported before anything runs.
+ */
+class SpecializerTest {
+    @Test
+    void specializesProvenOperations() {
+        assertEquals("Add", nodeOf("1 + 2 * 3"));
+        assertEquals("Negate", nodeOf("-(1 + 2)"));
+        assertEquals("Not", nodeOf("!(1 < 2)"));
+        assertEquals("Concatenate", nodeOf("\"a\" + 1"));
+        assertEquals("BooleanTernary", nodeOf("1 < 2 ? 1 : 2"));
+        // only a boolean condition is known to be truthy or not without a check
+        assertEquals("Ternary", nodeOf("1 ? 2 : 3"));
+    }
+
+    @Test
+    void interpreterEvaluatesSpecializedNodes() {
+        Interpreter interpreter = new Interpreter();
+        List<Stmt> statements = parse("var x = 1; print 1 + 2 * 3; print x + 2; x = x * 10; print x;");
+        assertEquals("7\n3\n10\n", run(interpreter, statements));
+
+        assertEquals("Add", name(interpreter.specialized.get(expression(statements.get(1)))));
+        // a variable can hold anything, so its operators are checked
+        assertEquals("Binary", name(interpreter.specialized.get(expression(statements.get(2)))));
+        assertEquals("Assign", name(interpreter.specialized.get(expression(statements.get(3)))));
+    }
+
+    @Test
+    void specializedNodesFailLikeTheInterpreter() {
+        List<Stmt> statements = parse("print 1 / (2 - 2);");
+        RuntimeError error = assertThrows(RuntimeError.class, () -> run(new Interpreter(), statements));
+        assertEquals("Division by zero.", error.getMessage());
+        assertSame(((Expr.Binary) expression(statements.get(0))).operator, error.token);
+
+        RuntimeError undefined = assertThrows(RuntimeError.class,
+                () -> run(new Interpreter(), parse("{ var a = 1; print a + b; }")));
+        assertEquals("Undefined variable 'b'.", undefined.getMessage());
+    }
+
+    @Test
+    void reportsCertainFailuresBeforeRunning() {
+        List<Stmt> statements = parse("print 1 - \"a\";\nprint -nil;\nvar x; print (1 < 2) + 3 + x;\nprint x - 1;");
+        TypeChecker checker = new TypeChecker(null);
+        checker.check(statements);
+        // the same as the Specializer reports on its way
+        TypeChecker specializing = new TypeChecker(null);
+        new Interpreter().specialize(statements, specializing);
+        assertEquals(checker.errors().toString(), specializing.errors().toString());
+
+        List<Diagnostic> errors = checker.errors();
+        assertEquals(3, errors.size());
+        assertEquals("[line 1] Error at '-': Operands must be numbers.", errors.get(0).toString());
+        assertEquals("[line 2] Error at '-': Operand must be a number.", errors.get(1).toString());
+        assertEquals("[line 3] Error at '+': Operands must be two numbers or two strings.", errors.get(2).toString());
+    }
+
+    // the class of the node the expression in source is specialized to
+    private static String nodeOf(String source) {
+        TypeChecker checker = new TypeChecker(null);
+        Specializer.Node node = Specializer.specialize(expression(parse(source + ";").get(0)), checker);
+        assertTrue(checker.errors().isEmpty(), checker.errors().toString());
+        return name(node);
+    }
+
+    private static String name(Specializer.Node node) {
+        return node.getClass().getSimpleName();
+    }
+
+    private static Expr expression(Stmt statement) {
+        if (statement instanceof Stmt.Print) {
+            return ((Stmt.Print) statement).expression;
+        }
+        return ((Stmt.Expression) statement).expression;
+    }
+
+    private static List<Stmt> parse(String source) {
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        try {
+            List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parseProgram();
+            assertTrue(errors.isEmpty(), errors.toString());
+            return statements;
+        } finally {
+            Lox.endCollectingErrors();
+        }
+    }
+
+    // what statements print when run like Lox.run does with -Djlox.typeCheck=true
+    private static String run(Interpreter interpreter, List<Stmt> statements) {
+        new Resolver(interpreter.globals).resolve(statements);
+        TypeChecker checker = new TypeChecker(null);
+        interpreter.specialized = interpreter.specialize(statements, checker);
+        assertTrue(checker.errors().isEmpty(), checker.errors().toString());
+
+        StringWriter printed = new StringWriter();
+        interpreter.output = new PrintWriter(printed);
+        try {
+            interpreter.execute(statements);
+        } finally {
+            interpreter.output = null;
+        }
+        return printed.toString().replace(System.lineSeparator(), "\n");
+    }
+}
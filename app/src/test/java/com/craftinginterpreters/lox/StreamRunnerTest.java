@@ -0,0 +1,106 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Piped input, as run by StreamRunner: what it prints and which errors it
+ * reports, with stderr captured.
+ */
+class StreamRunnerTest {
+    @Test
+    void badLinesDoNotStopLaterOnes() throws IOException {
+        Ran ran = run("1 +;\n".repeat(Lox.maxErrors + 10) + "print \"still here\";\n");
+        assertEquals("still here\n", ran.output);
+        // each line counts its own errors, none of them reaches the limit
+        assertEquals(Lox.maxErrors + 10, count(ran.errors, "Expected expression."));
+        assertEquals(0, count(ran.errors, "Too many errors"));
+    }
+
+    @Test
+    void runsStatementsAndPrintsExpressions() throws IOException {
+        // statements used to fail on piped input, see c560d95
+        Ran ran = run("var a = 1;\nprint a + 1;\n1 + 2\na = a * 10; print a;\n\n// done\n");
+        assertEquals("2\n3\n10\n", ran.output);
+        assertEquals("", ran.errors);
+    }
+
+    @Test
+    void continuesBlocksStringsAndComments() throws IOException {
+        Ran ran = run("{\n  var a = \"x\n y\";\n  /* a\n  comment */ print a;\n}\nprint 1;\n");
+        assertEquals("x\n y\n1\n", ran.output);
+        assertEquals("", ran.errors);
+    }
+
+    @Test
+    void continuesStatementsAndExpressions() throws IOException {
+        Ran ran = run("var a = 1 +\n  2;\nprint a *\n\n  3\n;\n1 +\n2\nprint\na;\n");
+        assertEquals("9\n3\n3\n", ran.output);
+        assertEquals("", ran.errors);
+    }
+
+    @Test
+    void reportsErrorsOnTheirInputLine() throws IOException {
+        Ran ran = run("print 1;\nprint 1 +\n  ;\nprint 2;\nprint 1 / 0;\nprint 3;\n");
+        assertEquals("1\n2\n3\n", ran.output);
+        assertTrue(ran.errors.contains("[line 3] Error at ';': Expected expression."), ran.errors);
+        assertTrue(ran.errors.contains("Division by zero.\n[line 5]"), ran.errors);
+    }
+
+    @Test
+    void reportsStatementsTheInputEndsIn() throws IOException {
+        Ran ran = run("print 1;\nprint 2 +\n");
+        assertEquals("1\n", ran.output);
+        assertTrue(ran.errors.contains("[line 2] Error at end: Expected expression."), ran.errors);
+    }
+
+    @Test
+    void lineThatIsAnExpressionIsNotContinued() throws IOException {
+        Ran ran = run("1 + 2\n* 3;\n");
+        assertEquals("3\n", ran.output);
+        assertTrue(ran.errors.contains("[line 2] Error at '*': Expected expression."), ran.errors);
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static final class Ran {
+        final String output;
+        final String errors;
+
+        Ran(String output, String errors) {
+            this.output = output;
+            this.errors = errors;
+        }
+    }
+
+    // ASCII only, so that the charset of the output doesn't matter
+    private static Ran run(String input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errors, true));
+        try {
+            new StreamRunner(new ByteArrayInputStream(input.getBytes(StandardCharsets.US_ASCII)), output)
+                    .run(new Interpreter());
+        } finally {
+            System.setErr(err);
+        }
+        String separator = System.lineSeparator();
+        return new Ran(output.toString(StandardCharsets.US_ASCII).replace(separator, "\n"),
+                errors.toString(StandardCharsets.US_ASCII).replace(separator, "\n"));
+    }
+}
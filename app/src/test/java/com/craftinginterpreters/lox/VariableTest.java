@@ -0,0 +1,176 @@
+package com.craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Variables end to end: the depths and slots the Resolver gives them, how the
+ * Interpreter finds them in enclosing Environments and Globals, and the errors
+ * for undefined and badly declared ones.
+ */
+class VariableTest {
+    @Test
+    void resolvesDepthsAndSlots() {
+        List<Stmt> statements = parse("{ var a = 1; var b = 2; { var c = 3; { print a + c; } } }");
+        List<Diagnostic> errors = resolve(new Interpreter(), statements);
+        assertTrue(errors.isEmpty(), errors.toString());
+
+        Stmt.Block outer = (Stmt.Block) statements.get(0);
+        Stmt.Var b = (Stmt.Var) outer.statements.get(1);
+        Stmt.Block middle = (Stmt.Block) outer.statements.get(2);
+        Stmt.Block inner = (Stmt.Block) middle.statements.get(1);
+        Expr.Binary sum = (Expr.Binary) ((Stmt.Print) inner.statements.get(0)).expression;
+        Expr.Variable a = (Expr.Variable) sum.left;
+        Expr.Variable c = (Expr.Variable) sum.right;
+
+        assertEquals(2, outer.slots);
+        assertEquals(1, middle.slots);
+        // declares nothing so it gets no scope, a and c are counted from middle
+        assertEquals(0, inner.slots);
+        assertEquals(0, b.depth);
+        assertEquals(1, b.slot);
+        assertEquals(1, a.depth);
+        assertEquals(0, a.slot);
+        assertEquals(0, c.depth);
+        assertEquals(0, c.slot);
+    }
+
+    @Test
+    void resolvesGlobalsToSlots() {
+        Interpreter interpreter = new Interpreter();
+        List<Stmt> statements = parse("var a = 1; var b = a; b = a;");
+        resolve(interpreter, statements);
+
+        Stmt.Var b = (Stmt.Var) statements.get(1);
+        Expr.Assign assign = (Expr.Assign) ((Stmt.Expression) statements.get(2)).expression;
+        assertEquals(-1, b.depth);
+        assertEquals(interpreter.globals.slot("b"), b.slot);
+        assertEquals(-1, assign.depth);
+        assertEquals(b.slot, assign.slot);
+        assertEquals(interpreter.globals.slot("a"), ((Expr.Variable) assign.value).slot);
+    }
+
+    @Test
+    void shadowsOuterVariables() {
+        assertEquals("inner\nmiddle\nglobal\n", run(
+                "var a = \"global\";"
+                        + "{ var a = \"middle\"; { var a = \"inner\"; print a; } print a; }"
+                        + "print a;"));
+    }
+
+    @Test
+    void readsEnclosingBlocksThroughBlocksWithoutVariables() {
+        assertEquals("3\n", run("{ var a = 1; { { var b = 2; { { print a + b; } } } } }"));
+    }
+
+    @Test
+    void assignsToEnclosingBlocks() {
+        assertEquals("2\n3\n", run(
+                "var g = 0; { var a = 1; { var b = 0; a = 2; g = 3; } print a; } print g;"));
+    }
+
+    @Test
+    void assignmentIsAnExpression() {
+        assertEquals("3\n3\n3\n", run("var a; { var b; print a = b = 3; print a; print b; }"));
+    }
+
+    @Test
+    void globalsLastAcrossRuns() {
+        Interpreter interpreter = new Interpreter();
+        assertEquals("", run(interpreter, "var a = 1; var a = a + 1;"));
+        assertEquals("2\n", run(interpreter, "print a;"));
+    }
+
+    @Test
+    void readingAnUndefinedGlobalFails() {
+        assertUndefined("print 1 + nothing;", "nothing");
+        // resolved to a global from inside a block
+        assertUndefined("{ var a = 1; print a + nothing; }", "nothing");
+        // declared later, which is too late
+        assertUndefined("print later; var later = 1;", "later");
+    }
+
+    @Test
+    void assigningAnUndefinedGlobalFails() {
+        assertUndefined("nothing = 1;", "nothing");
+        assertUndefined("{ var a; a = nothing = 1; }", "nothing");
+    }
+
+    @Test
+    void localCanNotBeDeclaredTwice() {
+        List<Diagnostic> errors = resolve(new Interpreter(), parse("{ var a = 1; var a = 2; }"));
+        assertEquals(1, errors.size());
+        assertEquals("Already a variable with this name in this scope.", errors.get(0).message());
+    }
+
+    @Test
+    void localCanNotBeReadInItsOwnInitializer() {
+        List<Diagnostic> errors = resolve(new Interpreter(), parse("var a = 1; { var a = a; }"));
+        assertEquals(1, errors.size());
+        assertEquals("Can't read local variable in its own initializer.", errors.get(0).message());
+    }
+
+    @Test
+    void memoDoesNotRememberVariables() {
+        // each sum is large enough to be memoized, were it not for a
+        String sum = "a" + " + 1".repeat(20);
+        String source = "var a = 0; print " + sum + "; a = 100; print " + sum + ";";
+        Interpreter interpreter = new MemoizingInterpreter(new ExprMemo(64));
+        assertEquals("20\n120\n", run(interpreter, source));
+    }
+
+    private static void assertUndefined(String source, String name) {
+        RuntimeError error = assertThrows(RuntimeError.class, () -> run(source));
+        assertEquals("Undefined variable '" + name + "'.", error.getMessage());
+        assertEquals(name, error.token.lexeme);
+    }
+
+    private static List<Stmt> parse(String source) {
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        try {
+            List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parseProgram();
+            assertTrue(errors.isEmpty(), errors.toString());
+            return statements;
+        } finally {
+            Lox.endCollectingErrors();
+        }
+    }
+
+    // the errors the Resolver reported
+    private static List<Diagnostic> resolve(Interpreter interpreter, List<Stmt> statements) {
+        List<Diagnostic> errors = Lox.beginCollectingErrors();
+        try {
+            new Resolver(interpreter.globals).resolve(statements);
+            return errors;
+        } finally {
+            Lox.endCollectingErrors();
+        }
+    }
+
+    private static String run(String source) {
+        return run(new Interpreter(), source);
+    }
+
+    // what source prints
+    private static String run(Interpreter interpreter, String source) {
+        List<Stmt> statements = parse(source);
+        List<Diagnostic> errors = resolve(interpreter, statements);
+        assertTrue(errors.isEmpty(), errors.toString());
+
+        StringWriter printed = new StringWriter();
+        interpreter.output = new PrintWriter(printed);
+        try {
+            interpreter.execute(statements);
+        } finally {
+            interpreter.output = null;
+        }
+        return printed.toString().replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,309 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Random;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+/**
+ * Generates random expressions, for differential testing and benchmark
+ * corpora. The same seed always gives the same expressions.
+ *
+ * The expressions respect the grammar i.e. printing one with SourcePrinter and
+ * parsing the output gives back the same tree. Since a grouping can only hold
+ * an equality, ternaries only appear in the else branch of other ternaries and
+ * commas only at the top. Likewise assignments only appear as operands of
+ * commas, at the top or as the value of another assignment.
+ *
+ * Given variable names, operands of any type are now and then one of the
+ * variables, and now and then an assignment to one. Operands of a given type
+ * never are, so well typed expressions stay well typed. The generator doesn't
+ * declare the variables, so whether they are defined is up to the caller.
+ *
+ * Example Usage:
+ *
+ * <pre>
+ * {@code
+ *      ExprGenerator generator = new ExprGenerator(42, 32, false);
+ *      Expr expr = generator.generate(100); // at most 100 nodes
+ *      String source = new SourcePrinter().print(expr);
+ * }
+ * </pre>
+ */
+class ExprGenerator {
+    private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur" };
+
+    // binding power of the expressions, higher binds tighter, see Parser
+    private static final int EQUALITY = 1;
+    private static final int COMPARISON = 2;
+    private static final int TERM = 3;
+    private static final int FACTOR = 4;
+    private static final int UNARY = 5;
+    private static final int PRIMARY = 6;
+
+    private final Random random;
+    private final int maxDepth;
+    private final boolean wellTyped;
+    private final String[] variables;
+
+    /**
+     * @param maxDepth  nesting limit, deeper subexpressions become literals
+     * @param wellTyped if true, operands always have the types their operators
+     *                  need and there are no zero literals, so evaluation only
+     *                  fails if a divisor happens to work out to 0. Otherwise
+     *                  roughly half of the operators get operands of any type.
+     */
+    ExprGenerator(long seed, int maxDepth, boolean wellTyped) {
+        this(seed, maxDepth, wellTyped, new String[0]);
+    }
+
+    /**
+     * @param variables the names of the variables to use and assign
+     */
+    ExprGenerator(long seed, int maxDepth, boolean wellTyped, String[] variables) {
+        this.random = new Random(seed);
+        this.maxDepth = maxDepth;
+        this.wellTyped = wellTyped;
+        this.variables = variables;
+    }
+
+    /**
+     * @param size upper bound on the number of nodes, the generated expression
+     *             has about as many unless maxDepth cuts it short
+     * @return an expression of any type, possibly with commas and ternaries
+     */
+    Expr generate(int size) {
+        return comma(size, 0);
+    }
+
+    /**
+     * @return an expression without commas that evaluates to a value of type
+     *         (anything but UNKNOWN), unless it fails at runtime
+     */
+    Expr generate(LoxType type, int size) {
+        return assignment(type, size, 0);
+    }
+
+    private Expr comma(int size, int depth) {
+        if (size >= 3 && depth < maxDepth && random.nextInt(4) == 0) {
+            int leftSize = split(size - 1);
+            return new Expr.Binary(comma(leftSize, depth + 1), token(COMMA, ","),
+                    assignment(anyType(), size - 1 - leftSize, depth + 1));
+        }
+        return assignment(anyType(), size, depth);
+    }
+
+    // the value of an assignment has the type of the value assigned
+    private Expr assignment(LoxType type, int size, int depth) {
+        // no random numbers are drawn without variables, so that the expressions
+        // generated for a seed stay the same
+        if (variables.length > 0 && size >= 2 && depth < maxDepth && random.nextInt(6) == 0) {
+            return new Expr.Assign(variable(), assignment(type, size - 1, depth + 1));
+        }
+        return ternary(type, size, depth);
+    }
+
+    private Expr ternary(LoxType type, int size, int depth) {
+        if (size >= 4 && depth < maxDepth && random.nextInt(4) == 0) {
+            int condSize = split(size - 2);
+            int ifTrueSize = split(size - 1 - condSize);
+            int orElseSize = size - 1 - condSize - ifTrueSize;
+            return new Expr.Ternary(operand(anyType(), condSize, depth + 1, EQUALITY),
+                    operand(type, ifTrueSize, depth + 1, EQUALITY), ternary(type, orElseSize, depth + 1));
+        }
+        return operand(type, size, depth, EQUALITY);
+    }
+
+    // an expression at or above the precedence level, grouped if it has to be
+    private Expr operand(LoxType type, int size, int depth, int level) {
+        Expr expr = expression(type, size, depth);
+        if (level(expr) < level) {
+            return new Expr.Grouping(expr);
+        }
+        return expr;
+    }
+
+    // an equality or anything that binds tighter
+    private Expr expression(LoxType type, int size, int depth) {
+        if (size <= 1 || depth >= maxDepth) {
+            return literal(type);
+        }
+
+        if (type == LoxType.UNKNOWN) {
+            return anyOperator(size, depth);
+        }
+
+        // now and then group for no reason
+        if (random.nextInt(10) == 0) {
+            return new Expr.Grouping(expression(type, size - 1, depth + 1));
+        }
+
+        switch (type) {
+            case NUMBER:
+                if (random.nextInt(6) == 0) {
+                    return unary(MINUS, "-", LoxType.NUMBER, size, depth);
+                }
+                switch (random.nextInt(4)) {
+                    case 0:
+                        return binary(PLUS, "+", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    case 1:
+                        return binary(MINUS, "-", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    case 2:
+                        return binary(STAR, "*", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    default:
+                        return binary(SLASH, "/", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                }
+            case STRING:
+                // string + anything or anything + string
+                if (random.nextBoolean()) {
+                    return binary(PLUS, "+", LoxType.STRING, anyType(), size, depth);
+                }
+                return binary(PLUS, "+", anyType(), LoxType.STRING, size, depth);
+            case BOOLEAN:
+                switch (random.nextInt(7)) {
+                    case 0:
+                        return binary(GREATER, ">", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    case 1:
+                        return binary(GREATER_EQUAL, ">=", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    case 2:
+                        return binary(LESS, "<", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    case 3:
+                        return binary(LESS_EQUAL, "<=", LoxType.NUMBER, LoxType.NUMBER, size, depth);
+                    case 4:
+                        return binary(EQUAL_EQUAL, "==", anyType(), anyType(), size, depth);
+                    case 5:
+                        return binary(BANG_EQUAL, "!=", anyType(), anyType(), size, depth);
+                    default:
+                        return unary(BANG, "!", anyType(), size, depth);
+                }
+            default:
+                // there is no operator that gives nil
+                return literal(type);
+        }
+    }
+
+    // any operator on operands of any type, likely to fail at runtime
+    private Expr anyOperator(int size, int depth) {
+        switch (random.nextInt(11)) {
+            case 0:
+                return unary(MINUS, "-", anyType(), size, depth);
+            case 1:
+                return unary(BANG, "!", anyType(), size, depth);
+            case 2:
+                return binary(PLUS, "+", anyType(), anyType(), size, depth);
+            case 3:
+                return binary(MINUS, "-", anyType(), anyType(), size, depth);
+            case 4:
+                return binary(STAR, "*", anyType(), anyType(), size, depth);
+            case 5:
+                return binary(SLASH, "/", anyType(), anyType(), size, depth);
+            case 6:
+                return binary(GREATER, ">", anyType(), anyType(), size, depth);
+            case 7:
+                return binary(GREATER_EQUAL, ">=", anyType(), anyType(), size, depth);
+            case 8:
+                return binary(LESS, "<", anyType(), anyType(), size, depth);
+            case 9:
+                return binary(LESS_EQUAL, "<=", anyType(), anyType(), size, depth);
+            default:
+                return binary(EQUAL_EQUAL, "==", anyType(), anyType(), size, depth);
+        }
+    }
+
+    private Expr binary(TokenType operator, String lexeme, LoxType left, LoxType right, int size, int depth) {
+        int level = level(operator);
+        int leftSize = split(size - 1);
+        // left associative, so only the right operand needs grouping at the same level
+        return new Expr.Binary(operand(left, leftSize, depth + 1, level), token(operator, lexeme),
+                operand(right, size - 1 - leftSize, depth + 1, level + 1));
+    }
+
+    private Expr unary(TokenType operator, String lexeme, LoxType right, int size, int depth) {
+        return new Expr.Unary(token(operator, lexeme), operand(right, size - 1, depth + 1, UNARY));
+    }
+
+    private Expr literal(LoxType type) {
+        switch (type) {
+            case NUMBER:
+                // integers and one decimal place, both of which the scanner reads back exactly.
+                // Zeros are rare but there so that division by zero is covered
+                int value = !wellTyped && random.nextInt(20) == 0 ? 0 : 1 + random.nextInt(1000);
+                String text = random.nextBoolean() ? Integer.toString(value) : value + "." + random.nextInt(10);
+                return new Expr.Literal(Double.parseDouble(text));
+            case STRING:
+                return new Expr.Literal(WORDS[random.nextInt(WORDS.length)]);
+            case BOOLEAN:
+                return new Expr.Literal(random.nextBoolean());
+            case NIL:
+                return new Expr.Literal(null);
+            default:
+                if (variables.length > 0 && random.nextInt(3) == 0) {
+                    return new Expr.Variable(variable());
+                }
+                return literal(concreteType());
+        }
+    }
+
+    private LoxType anyType() {
+        if (!wellTyped && random.nextBoolean()) {
+            return LoxType.UNKNOWN;
+        }
+        return concreteType();
+    }
+
+    private LoxType concreteType() {
+        // mostly numbers, that is where most of the operators are
+        switch (random.nextInt(8)) {
+            case 0:
+            case 1:
+                return LoxType.STRING;
+            case 2:
+            case 3:
+                return LoxType.BOOLEAN;
+            case 4:
+                return LoxType.NIL;
+            default:
+                return LoxType.NUMBER;
+        }
+    }
+
+    private Token variable() {
+        return token(IDENTIFIER, variables[random.nextInt(variables.length)]);
+    }
+
+    // how many of size nodes go to the first of two subexpressions
+    private int split(int size) {
+        return size <= 1 ? size : 1 + random.nextInt(size - 1);
+    }
+
+    private static int level(TokenType operator) {
+        switch (operator) {
+            case BANG_EQUAL:
+            case EQUAL_EQUAL:
+                return EQUALITY;
+            case GREATER:
+            case GREATER_EQUAL:
+            case LESS:
+            case LESS_EQUAL:
+                return COMPARISON;
+            case MINUS:
+            case PLUS:
+                return TERM;
+            default:
+                return FACTOR;
+        }
+    }
+
+    private static int level(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            return level(((Expr.Binary) expr).operator.type);
+        }
+        if (expr instanceof Expr.Unary) {
+            return UNARY;
+        }
+        return PRIMARY;
+    }
+
+    private static Token token(TokenType type, String lexeme) {
+        return new Token(type, lexeme, null, 1);
+    }
+}
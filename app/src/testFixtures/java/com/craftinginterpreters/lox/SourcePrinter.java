@@ -0,0 +1,92 @@
+package com.craftinginterpreters.lox;
+
+import java.math.BigDecimal;
+
+/**
+ * Prints an expression back as Lox source code, the inverse of the Parser. The
+ * tree has to be one the Parser could have produced e.g. a ternary inside a
+ * binary expression cannot be printed since there is no source for it (see
+ * ExprGenerator).
+ *
+ * Example Usage:
+ *
+ * <pre>
+ * {@code
+ *      String source = new SourcePrinter().print(expression); // (1 + 2) * 3
+ * }
+ * </pre>
+ */
+class SourcePrinter implements Expr.Visitor<Void> {
+    private final StringBuilder builder = new StringBuilder();
+
+    String print(Expr expr) {
+        builder.setLength(0);
+        expr.accept(this);
+        return builder.toString();
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        expr.cond.accept(this);
+        builder.append(" ? ");
+        expr.ifTrue.accept(this);
+        builder.append(" : ");
+        expr.orElse.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+        if (expr.operator.type != TokenType.COMMA) {
+            builder.append(' ');
+        }
+        builder.append(expr.operator.lexeme).append(' ');
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        builder.append('(');
+        expr.expression.accept(this);
+        builder.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (value instanceof String) {
+            // there are no escape sequences, so the string can't contain a '"'
+            builder.append('"').append(value).append('"');
+        } else if (value instanceof Double) {
+            // no exponent, 1e21 is 1.0E21 to Double.toString but the scanner only reads
+            // plain digits
+            builder.append(BigDecimal.valueOf((double) value).stripTrailingZeros().toPlainString());
+        } else {
+            builder.append(Interpreter.stringify(value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        builder.append(expr.operator.lexeme);
+        expr.right.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        builder.append(expr.name.lexeme);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        builder.append(expr.name.lexeme).append(" = ");
+        expr.value.accept(this);
+        return null;
+    }
+}